@@ -0,0 +1,130 @@
+package com.example.smssender;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Admission control between task fetching and SMS dispatch
+ *
+ * Tracks SMS handed to the radio that still wait for SMS_SENT results and
+ * the number of their segments not yet acknowledged. Once either count
+ * reaches its high watermark the gate closes and the service stops fetching
+ * work; it opens again only when both counts drop below their low
+ * watermarks, so a device near its limit does not flap between states. The
+ * free capacity reported to the server is zero while the gate is closed.
+ */
+public class AdmissionController {
+    
+    private final int highSends;
+    private final int lowSends;
+    private final int highSegments;
+    private final int lowSegments;
+    
+    // Unacknowledged segments per queue_id; a message is in flight while it has any
+    private final Map<Integer, Integer> unacked = new HashMap<>();
+    private int segments = 0;
+    private boolean open = true;
+    
+    // Metrics
+    private int peakSends = 0;
+    private int peakSegments = 0;
+    private int pauses = 0;
+    private long closedSince = 0;
+    private long closedTotal = 0;
+    
+    public AdmissionController(int highSends, int lowSends, int highSegments, int lowSegments) {
+        this.highSends = highSends;
+        this.lowSends = Math.max(1, Math.min(lowSends, highSends));
+        this.highSegments = highSegments;
+        this.lowSegments = Math.max(1, Math.min(lowSegments, highSegments));
+    }
+    
+    /**
+     * Records a message handed to the radio, before any of its results can arrive
+     */
+    public synchronized void onSend(int queueId, int segmentCount, long now) {
+        Integer previous = unacked.put(queueId, Math.max(1, segmentCount));
+        segments += Math.max(1, segmentCount) - (previous != null ? previous : 0);
+        peakSends = Math.max(peakSends, unacked.size());
+        peakSegments = Math.max(peakSegments, segments);
+        update(now);
+    }
+    
+    /**
+     * Records the SMS_SENT result of one segment; returns true if this reopened the gate
+     */
+    public synchronized boolean onSegmentAcked(int queueId, long now) {
+        Integer remaining = unacked.get(queueId);
+        if (remaining == null) {
+            return false;
+        }
+        segments--;
+        if (remaining <= 1) {
+            unacked.remove(queueId);
+        } else {
+            unacked.put(queueId, remaining - 1);
+        }
+        return update(now);
+    }
+    
+    /**
+     * Forgets a finished message and any segments still unacknowledged; returns true if this reopened the gate
+     */
+    public synchronized boolean release(int queueId, long now) {
+        Integer remaining = unacked.remove(queueId);
+        if (remaining == null) {
+            return false;
+        }
+        segments -= remaining;
+        return update(now);
+    }
+    
+    public synchronized boolean isOpen() {
+        return open;
+    }
+    
+    /**
+     * Further sends the device can take before the gate closes; zero while closed
+     */
+    public synchronized int getFreeSlots() {
+        return open ? Math.max(0, highSends - unacked.size()) : 0;
+    }
+    
+    public synchronized int getInFlight() {
+        return unacked.size();
+    }
+    
+    public synchronized int getUnackedSegments() {
+        return segments;
+    }
+    
+    /**
+     * Compact form for the probe header: state=open;in_flight=2;segments=5;...
+     */
+    public synchronized String toHeaderValue(long now) {
+        return "state=" + (open ? "open" : "closed")
+            + ";in_flight=" + unacked.size()
+            + ";segments=" + segments
+            + ";peak_in_flight=" + peakSends
+            + ";peak_segments=" + peakSegments
+            + ";pauses=" + pauses
+            + ";paused_ms=" + getClosedTime(now);
+    }
+    
+    private long getClosedTime(long now) {
+        return closedTotal + (open ? 0 : now - closedSince);
+    }
+    
+    private boolean update(long now) {
+        if (open && (unacked.size() >= highSends || segments >= highSegments)) {
+            open = false;
+            pauses++;
+            closedSince = now;
+        } else if (!open && unacked.size() < lowSends && segments < lowSegments) {
+            open = true;
+            closedTotal += now - closedSince;
+            return true;
+        }
+        return false;
+    }
+}
\ No newline at end of file
@@ -63,6 +63,28 @@ public class AppConfig {
      */
     public static final String REPLY_ENDPOINT = BASE_URL + "/api/sms/reply_handler.php";
     
+    /**
+     * Push endpoint - server-sent events stream of SMS tasks
+     * Only used when ENABLE_PUSH_MODE is true
+     */
+    public static final String PUSH_ENDPOINT = BASE_URL + "/api/sms/push.php";
+    
+    /**
+     * Sync endpoint - one POST carrying statuses and replies, answered with new tasks
+     * Only used when ENABLE_SYNC_ENVELOPE is true
+     */
+    public static final String SYNC_ENDPOINT = BASE_URL + "/api/sms/sync.php";
+    
+    /**
+     * Suppression list endpoint - opt-out numbers, fetched as a delta since the version we hold
+     */
+    public static final String SUPPRESSION_ENDPOINT = BASE_URL + "/api/sms/suppression.php";
+    
+    /**
+     * Template endpoint - message templates for tasks that carry template_id and params
+     */
+    public static final String TEMPLATE_ENDPOINT = BASE_URL + "/api/sms/template.php";
+    
     // ============================================================================
     // TIMING CONFIGURATION
     // ============================================================================
@@ -118,6 +140,43 @@ public class AppConfig {
      */
     public static final int SMS_DELIVERY_TIMEOUT = 30; // seconds
     
+    /**
+     * Delivery timeout wheel resolution in milliseconds and number of slots
+     * One tick expires every in-flight SMS past SMS_DELIVERY_TIMEOUT
+     */
+    public static final long TIMEOUT_WHEEL_TICK = 1000; // 1 second
+    public static final int TIMEOUT_WHEEL_SLOTS = 64;
+    
+    /**
+     * Status update batch interval in milliseconds
+     * Non-critical status updates are uploaded together at this interval
+     */
+    public static final long STATUS_BATCH_INTERVAL = 10000; // 10 seconds
+    
+    /**
+     * Scheduler lag in milliseconds above which a timer tick or probe alarm counts as late
+     */
+    public static final long SCHEDULER_LATE_THRESHOLD = 1000; // 1 second
+    
+    /**
+     * Reply statistics flush interval in milliseconds
+     * Reply counters are kept in memory and written to prefs in one edit at most this often
+     */
+    public static final long REPLY_STATS_FLUSH_INTERVAL = 5000; // 5 seconds
+    
+    /**
+     * Minimum interval between statistics publishes in milliseconds
+     * Sent/failed/delivered updates within this window are coalesced into
+     * one notification update and one UPDATE_STATISTICS broadcast
+     */
+    public static final long STATS_PUBLISH_INTERVAL = 1000; // 1 second
+    
+    /**
+     * Wake lock timeout per burst in milliseconds
+     * A probe, dispatch or upload burst never keeps the CPU awake longer than this
+     */
+    public static final long WAKE_LOCK_BURST_TIMEOUT = 60000; // 60 seconds
+    
     // ============================================================================
     // NETWORK CONFIGURATION
     // ============================================================================
@@ -132,6 +191,93 @@ public class AppConfig {
      */
     public static final int READ_TIMEOUT = 15000; // 15 seconds
     
+    /**
+     * Number of concurrent probe fetches per probe tick
+     * Each worker holds one GET to the prober endpoint at a time
+     */
+    public static final int PROBE_WORKERS = 2;
+    
+    /**
+     * Number of worker threads dispatching fetched SMS tasks
+     */
+    public static final int DISPATCH_WORKERS = 2;
+    
+    /**
+     * Push stream read timeout in milliseconds
+     * The server must send a heartbeat comment more often than this
+     */
+    public static final int PUSH_HEARTBEAT_TIMEOUT = 60000; // 60 seconds
+    
+    /**
+     * Push stream reconnect backoff bounds in milliseconds
+     */
+    public static final long PUSH_RECONNECT_MIN_DELAY = 1000; // 1 second
+    public static final long PUSH_RECONNECT_MAX_DELAY = 60000; // 60 seconds
+    
+    /**
+     * Maximum time a queued task may wait in its priority lane (milliseconds)
+     * Older tasks are dispatched ahead of higher lanes so bulk traffic cannot starve
+     */
+    public static final long PRIORITY_MAX_WAIT = 30000; // 30 seconds
+    
+    /**
+     * Higher-priority dispatches allowed per bulk dispatch while the bulk lane is non-empty
+     */
+    public static final int PRIORITY_FAIRNESS_RATIO = 8;
+    
+    /**
+     * Maximum SMS a device holds at once (queued plus awaiting reports)
+     * Reported to the server as capacity; probing pauses while the device is full
+     */
+    public static final int DEVICE_MAX_IN_FLIGHT = 20;
+    
+    /**
+     * Admission watermarks for SMS awaiting SMS_SENT results and their unacknowledged segments
+     * Fetching stops at either high watermark and resumes once both counts are below the low ones
+     */
+    public static final int ADMISSION_HIGH_SENDS = 8;
+    public static final int ADMISSION_LOW_SENDS = 4;
+    public static final int ADMISSION_HIGH_SEGMENTS = 24;
+    public static final int ADMISSION_LOW_SEGMENTS = 12;
+    
+    /**
+     * Number of recent sends the failure rate in the health header is computed over
+     */
+    public static final int HEALTH_FAILURE_WINDOW = 50;
+    
+    /**
+     * Outgoing SMS quota per rolling window
+     * Matches Android's default premium-SMS check of 30 messages per 30 minutes.
+     * Sends left are reported as quota= in X-Device-Capacity; fetching is not limited by it.
+     */
+    public static final int SMS_QUOTA_COUNT = 30;
+    public static final long SMS_QUOTA_WINDOW = 30 * 60 * 1000; // 30 minutes
+    
+    /**
+     * Task lease renewal in milliseconds
+     * Leases expiring within the margin are renewed; the check runs while leases are held
+     */
+    public static final long LEASE_RENEW_MARGIN = 15000; // 15 seconds
+    public static final long LEASE_CHECK_INTERVAL = 5000; // 5 seconds
+    
+    /**
+     * Number of recent queue_ids remembered to drop duplicate tasks
+     * Re-issued tasks within the window are answered with their last status
+     */
+    public static final int TASK_DEDUPE_WINDOW = 1024;
+    
+    /**
+     * Dedupe window flush interval in milliseconds
+     * Status changes are written to prefs in one edit at most this often; a
+     * process killed in between forgets them and may send those tasks again
+     */
+    public static final long TASK_DEDUPE_FLUSH_INTERVAL = 2000; // 2 seconds
+    
+    /**
+     * Number of message templates kept on the device
+     */
+    public static final int TEMPLATE_CACHE_SIZE = 64;
+    
     // ============================================================================
     // LOGGING AND DEBUGGING
     // ============================================================================
@@ -152,6 +298,32 @@ public class AppConfig {
      */
     public static final int MAX_LOG_SIZE = 10000;
     
+    /**
+     * Lowest level written to the in-app logs (AppLog.DEBUG, INFO, WARN or ERROR)
+     */
+    public static final int LOG_MIN_LEVEL = AppLog.DEBUG;
+    
+    /**
+     * In-app log write-back interval in milliseconds
+     * Lines are buffered in memory and written to prefs in one edit at most this often
+     */
+    public static final long LOG_FLUSH_INTERVAL = 1000; // 1 second
+    
+    /**
+     * Log sampling under load
+     * Once a log gets more than LOG_SAMPLING_THRESHOLD lines in a window, repeats of
+     * an identical line are counted instead of written until the window ends
+     */
+    public static final int LOG_SAMPLING_THRESHOLD = 30;
+    public static final long LOG_SAMPLING_WINDOW = 60000; // 1 minute
+    
+    /**
+     * Distinct lines tracked for sampling per log and window
+     * Lines past this many are always written, so a log of unique lines
+     * cannot grow the repeat counts without bound
+     */
+    public static final int LOG_SAMPLING_MAX_TRACKED = 256;
+    
     /**
      * Enable logging by default
      * Can be toggled at runtime via UI
@@ -194,7 +366,7 @@ public class AppConfig {
     
     /**
      * Enable automatic opt-out processing
-     * When true, STOP messages automatically add numbers to opt-out list
+     * When true, replies consisting of an opt-out keyword alone (STOP, ODJAVI, ...) add the sender to the opt-out list
      */
     public static final boolean ENABLE_AUTO_OPT_OUT = true;
     
@@ -204,6 +376,31 @@ public class AppConfig {
      */
     public static final boolean ENABLE_PIN_VERIFICATION = true;
     
+    /**
+     * Enable push task delivery
+     * When true, tasks are streamed from PUSH_ENDPOINT and probe polling
+     * only runs while the stream is disconnected
+     */
+    public static final boolean ENABLE_PUSH_MODE = false;
+    
+    /**
+     * Dial recipients in the home-country local form (e.g. 070123456)
+     * When false, numbers are sent as supplied by the server with separators removed
+     */
+    public static final boolean DIAL_LOCAL_FORM = false;
+    
+    /**
+     * Combine status upload, reply upload and task fetch into one sync request
+     * Cuts three connections per cycle to one on high-latency links; needs sync.php on the server
+     */
+    public static final boolean ENABLE_SYNC_ENVELOPE = false;
+    
+    /**
+     * Offer the compact CBOR encoding to the server
+     * Bodies switch from JSON only once the server answers in CBOR, so this is safe with JSON-only servers
+     */
+    public static final boolean ENABLE_BINARY_WIRE = true;
+    
     // ============================================================================
     // VALIDATION RULES
     // ============================================================================
@@ -213,6 +410,28 @@ public class AppConfig {
      */
     public static final int MAX_SMS_LENGTH = 160;
     
+    /**
+     * Encoding policy for tasks without an "encoding" field
+     * "keep" - send text as-is (one diacritic forces UCS-2, 70 chars per segment)
+     * "auto" - transliterate to GSM-7 only when it saves segments
+     * "gsm7" - always transliterate characters outside the GSM-7 alphabet
+     */
+    public static final String DEFAULT_ENCODING_POLICY = SmsEncodingPlanner.POLICY_KEEP;
+    
+    /**
+     * Home-country phone rules (North Macedonia)
+     * Numbers with +, 00 or the bare country code are international; a leading
+     * trunk prefix or a number of at most PHONE_MAX_NATIONAL_LENGTH digits is national
+     */
+    public static final String PHONE_COUNTRY_CODE = "389";
+    public static final String PHONE_TRUNK_PREFIX = "0";
+    public static final int PHONE_MAX_NATIONAL_LENGTH = 9;
+    
+    /**
+     * Number of normalized phone numbers kept in the LRU cache
+     */
+    public static final int PHONE_CACHE_SIZE = 256;
+    
     /**
      * Reply message maximum length for server
      */
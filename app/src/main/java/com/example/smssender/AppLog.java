@@ -0,0 +1,224 @@
+package com.example.smssender;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.util.Log;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Locale;
+
+/**
+ * Levelled logging facade for the in-app logs
+ *
+ * Each component gets a logger with its logcat tag and the prefs log it
+ * writes to (SmsProbeLog or ReplyLog, read by MainActivity). Lines below
+ * LOG_MIN_LEVEL or with logging disabled cost one check, and callers guard
+ * lines that are costly to build with isEnabled(). Each prefs log is kept
+ * as an in-memory ring, written back in one edit per LOG_FLUSH_INTERVAL
+ * rather than re-read and rewritten per line, with the timestamp formatted
+ * once per second. When a log gets busier than LOG_SAMPLING_THRESHOLD lines
+ * per LOG_SAMPLING_WINDOW, repeats of an identical line are dropped and
+ * counted, and the count is written when the window ends.
+ */
+public class AppLog {
+    
+    public static final int DEBUG = 0;
+    public static final int INFO = 1;
+    public static final int WARN = 2;
+    public static final int ERROR = 3;
+    
+    // Prefs logs
+    public static final String SERVICE_LOG = "SmsProbeLog";
+    public static final String REPLY_LOG = "ReplyLog";
+    
+    private static class Sink {
+        final SharedPreferences prefs;
+        final ArrayDeque<String> lines = new ArrayDeque<>();    // newest first
+        int chars = 0;
+        boolean loaded = false;
+        boolean flushScheduled = false;
+        
+        // Load-aware sampling
+        long windowStart = 0;
+        int windowLines = 0;
+        final Map<String, Integer> repeats = new HashMap<>();
+        
+        Sink(SharedPreferences prefs) {
+            this.prefs = prefs;
+        }
+    }
+    
+    private static final Map<String, Sink> sinks = new HashMap<>();
+    private static final Handler handler = ServiceScheduler.getInstance().getHandler();
+    private static final SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm:ss", Locale.getDefault());
+    private static long cachedSecond = -1;
+    private static String cachedTime = "";
+    
+    private final Context context;
+    private final String tag;
+    private final String separator;
+    private final Sink sink;
+    
+    private AppLog(Context context, String tag, String separator, Sink sink) {
+        this.context = context;
+        this.tag = tag;
+        this.separator = separator;
+        this.sink = sink;
+    }
+    
+    /**
+     * Logger for a component; lines are written as "HH:mm:ss" + separator + text
+     */
+    public static AppLog get(Context context, String tag, String logName, String separator) {
+        Context appContext = context.getApplicationContext();
+        Sink sink;
+        synchronized (sinks) {
+            sink = sinks.get(logName);
+            if (sink == null) {
+                sink = new Sink(appContext.getSharedPreferences(logName, Context.MODE_PRIVATE));
+                sinks.put(logName, sink);
+            }
+        }
+        return new AppLog(appContext, tag, separator, sink);
+    }
+    
+    public boolean isEnabled(int level) {
+        return level >= AppConfig.LOG_MIN_LEVEL && SettingsRegistry.getInstance(context).get().loggingEnabled;
+    }
+    
+    public void debug(String text) {
+        log(DEBUG, text);
+    }
+    
+    public void info(String text) {
+        log(INFO, text);
+    }
+    
+    public void warn(String text) {
+        log(WARN, text);
+    }
+    
+    public void error(String text) {
+        log(ERROR, text);
+    }
+    
+    public void log(int level, String text) {
+        if (isEnabled(level)) {
+            write(level, text);
+        }
+    }
+    
+    /**
+     * Writes every pending log to prefs now
+     */
+    public static void flushAll() {
+        synchronized (sinks) {
+            for (Sink sink : sinks.values()) {
+                flush(sink);
+            }
+        }
+    }
+    
+    private void write(int level, String text) {
+        Log.println(level == ERROR ? Log.ERROR : level == WARN ? Log.WARN : level == INFO ? Log.INFO : Log.DEBUG, tag, text);
+        
+        long now = System.currentTimeMillis();
+        synchronized (sink) {
+            if (!sink.loaded) {
+                load(sink);
+            }
+            if (now - sink.windowStart >= AppConfig.LOG_SAMPLING_WINDOW) {
+                endWindow(sink);
+                sink.windowStart = now;
+            }
+            sink.windowLines++;
+            
+            // Under load, identical lines after the first in a window are only counted
+            if (sink.windowLines > AppConfig.LOG_SAMPLING_THRESHOLD) {
+                Integer seen = sink.repeats.get(text);
+                if (seen != null) {
+                    sink.repeats.put(text, seen + 1);
+                    return;
+                }
+            }
+            // Distinct lines beyond the cap are written but not tracked, so the map stays bounded
+            if (sink.repeats.size() < AppConfig.LOG_SAMPLING_MAX_TRACKED) {
+                sink.repeats.put(text, 0);
+            }
+            
+            append(sink, formatTime(now) + separator + text);
+        }
+    }
+    
+    private void endWindow(Sink sink) {
+        for (Iterator<Map.Entry<String, Integer>> it = sink.repeats.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, Integer> entry = it.next();
+            if (entry.getValue() > 0) {
+                append(sink, formatTime(System.currentTimeMillis()) + separator + entry.getKey()
+                    + " (repeated " + entry.getValue() + "x)");
+            }
+            it.remove();
+        }
+        sink.windowLines = 0;
+    }
+    
+    private static void append(Sink sink, String line) {
+        sink.lines.addFirst(line);
+        sink.chars += line.length() + 1;
+        
+        // Keep only last MAX_LOG_ENTRIES lines or MAX_LOG_SIZE characters, whichever is smaller
+        while (sink.lines.size() > AppConfig.MAX_LOG_ENTRIES || (sink.chars > AppConfig.MAX_LOG_SIZE && sink.lines.size() > 1)) {
+            sink.chars -= sink.lines.removeLast().length() + 1;
+        }
+        
+        if (!sink.flushScheduled) {
+            sink.flushScheduled = true;
+            final Sink pending = sink;
+            handler.postDelayed(new Runnable() {
+                @Override
+                public void run() {
+                    flush(pending);
+                }
+            }, AppConfig.LOG_FLUSH_INTERVAL);
+        }
+    }
+    
+    private static void load(Sink sink) {
+        String stored = sink.prefs.getString("log", "");
+        for (String line : stored.split("\n")) {
+            if (!line.isEmpty() && sink.lines.size() < AppConfig.MAX_LOG_ENTRIES) {
+                sink.lines.addLast(line);
+                sink.chars += line.length() + 1;
+            }
+        }
+        sink.loaded = true;
+    }
+    
+    private static void flush(Sink sink) {
+        synchronized (sink) {
+            sink.flushScheduled = false;
+            if (!sink.loaded) {
+                return;
+            }
+            StringBuilder sb = new StringBuilder(sink.chars);
+            for (String line : sink.lines) {
+                sb.append(line).append("\n");
+            }
+            sink.prefs.edit().putString("log", sb.toString()).apply();
+        }
+    }
+    
+    private static synchronized String formatTime(long now) {
+        long second = now / 1000;
+        if (second != cachedSecond) {
+            cachedSecond = second;
+            cachedTime = timeFormat.format(new Date(now));
+        }
+        return cachedTime;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,183 @@
+package com.example.smssender;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkRequest;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import org.json.JSONObject;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Connectivity gate for the probe, status and reply loops
+ *
+ * Tracks validated networks through a ConnectivityManager callback. While no
+ * validated network exists the loops skip their network work instead of
+ * failing every tick; the listener hears about the transitions on the main
+ * thread so backlogs can be flushed once the device is back online. Offline
+ * periods are counted and timed.
+ */
+public class ConnectivityGate {
+    
+    private static final String TAG = "ConnectivityGate";
+    
+    public interface Listener {
+        void onOffline();
+        void onOnline(long offlineMs);
+    }
+    
+    private static ConnectivityGate instance;
+    
+    private final ConnectivityManager connectivityManager;
+    private final Handler mainHandler;
+    private final Set<Network> validatedNetworks = new HashSet<>();
+    private ConnectivityManager.NetworkCallback callback;
+    private Listener listener;
+    private volatile boolean started = false;
+    private volatile boolean online = true;
+    
+    // Offline metrics
+    private long offlineSince = 0;
+    private int offlineCount = 0;
+    private long totalOfflineMs = 0;
+    private long longestOfflineMs = 0;
+    
+    private ConnectivityGate(Context context) {
+        connectivityManager = (ConnectivityManager) context.getApplicationContext()
+            .getSystemService(Context.CONNECTIVITY_SERVICE);
+        mainHandler = new Handler(Looper.getMainLooper());
+    }
+    
+    public static synchronized ConnectivityGate getInstance(Context context) {
+        if (instance == null) {
+            instance = new ConnectivityGate(context);
+        }
+        return instance;
+    }
+    
+    public synchronized void start(Listener listener) {
+        if (started) {
+            return;
+        }
+        this.listener = listener;
+        
+        // Seed from the current default network; the callback only reports changes
+        Network active = connectivityManager.getActiveNetwork();
+        NetworkCapabilities capabilities = active != null ? connectivityManager.getNetworkCapabilities(active) : null;
+        if (capabilities != null && capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED)) {
+            validatedNetworks.add(active);
+        }
+        online = !validatedNetworks.isEmpty();
+        if (!online) {
+            offlineSince = SystemClock.elapsedRealtime();
+            offlineCount++;
+        }
+        
+        callback = new ConnectivityManager.NetworkCallback() {
+            @Override
+            public void onCapabilitiesChanged(Network network, NetworkCapabilities capabilities) {
+                networkChanged(network, capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED));
+            }
+            
+            @Override
+            public void onLost(Network network) {
+                networkChanged(network, false);
+            }
+        };
+        NetworkRequest request = new NetworkRequest.Builder()
+            .addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
+            .build();
+        connectivityManager.registerNetworkCallback(request, callback);
+        started = true;
+    }
+    
+    public synchronized void stop() {
+        if (!started) {
+            return;
+        }
+        try {
+            connectivityManager.unregisterNetworkCallback(callback);
+        } catch (Exception e) {
+            Log.e(TAG, "Error unregistering network callback: " + e.getMessage());
+        }
+        callback = null;
+        listener = null;
+        validatedNetworks.clear();
+        started = false;
+        online = true;
+    }
+    
+    /**
+     * False only while the gate is running and no validated network is up
+     */
+    public boolean isOnline() {
+        return !started || online;
+    }
+    
+    private synchronized void networkChanged(Network network, boolean validated) {
+        if (validated) {
+            validatedNetworks.add(network);
+        } else {
+            validatedNetworks.remove(network);
+        }
+        
+        boolean nowOnline = !validatedNetworks.isEmpty();
+        if (nowOnline == online) {
+            return;
+        }
+        online = nowOnline;
+        
+        final Listener current = listener;
+        if (!nowOnline) {
+            offlineSince = SystemClock.elapsedRealtime();
+            offlineCount++;
+            if (current != null) {
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        current.onOffline();
+                    }
+                });
+            }
+            return;
+        }
+        
+        final long offlineMs = offlineSince > 0 ? SystemClock.elapsedRealtime() - offlineSince : 0;
+        offlineSince = 0;
+        totalOfflineMs += offlineMs;
+        longestOfflineMs = Math.max(longestOfflineMs, offlineMs);
+        if (current != null) {
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    current.onOnline(offlineMs);
+                }
+            });
+        }
+    }
+    
+    /**
+     * Compact form for the probe request header: count=..;total_ms=..;longest_ms=..
+     */
+    public synchronized String toHeaderValue() {
+        return "count=" + offlineCount + ";total_ms=" + totalOfflineMs + ";longest_ms=" + longestOfflineMs;
+    }
+    
+    public synchronized JSONObject toJson() {
+        JSONObject json = new JSONObject();
+        try {
+            json.put("offline_count", offlineCount);
+            json.put("offline_total_ms", totalOfflineMs);
+            json.put("offline_longest_ms", longestOfflineMs);
+            json.put("online", online);
+        } catch (Exception e) {
+            // JSONObject.put only throws for non-finite numbers
+        }
+        return json;
+    }
+}
\ No newline at end of file
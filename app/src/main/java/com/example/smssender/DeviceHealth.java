@@ -0,0 +1,198 @@
+package com.example.smssender;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.os.PowerManager;
+import android.telephony.PhoneStateListener;
+import android.telephony.ServiceState;
+import android.telephony.SignalStrength;
+import android.telephony.TelephonyManager;
+import android.util.Log;
+
+/**
+ * Device health sent to the server on every probe for work routing
+ *
+ * Radio and power state come from change callbacks: a PhoneStateListener for
+ * signal level and service state, and broadcasts for battery, power-save and
+ * doze. Nothing is queried per request. The queue depths are passed in when
+ * the header is built, and the recent failure rate covers the outcomes of
+ * the last HEALTH_FAILURE_WINDOW sends, kept as a bit ring. The encoded
+ * header is cached and only rebuilt after a value has changed.
+ */
+public class DeviceHealth {
+    
+    private static final String TAG = "DeviceHealth";
+    
+    private final Context context;
+    private final TelephonyManager telephonyManager;
+    private final PowerManager powerManager;
+    private PhoneStateListener phoneStateListener;
+    private BroadcastReceiver powerReceiver;
+    
+    // Last sampled values, -1 = unknown
+    private int signalLevel = -1;       // 0-4
+    private int serviceState = -1;      // ServiceState.STATE_*
+    private int batteryPercent = -1;
+    private boolean charging = false;
+    private boolean powerSave = false;
+    private boolean idle = false;
+    private int replyQueue = 0;
+    private int statusBacklog = 0;
+    private int inFlight = 0;
+    
+    // Outcomes of recent sends, one bit each, set = failed
+    private final long[] outcomes = new long[(AppConfig.HEALTH_FAILURE_WINDOW + 63) / 64];
+    private int outcomeIndex = 0;
+    private int outcomeCount = 0;
+    private int failureCount = 0;
+    
+    private String header;              // null once a value changes
+    
+    public DeviceHealth(Context context) {
+        this.context = context.getApplicationContext();
+        this.telephonyManager = (TelephonyManager) this.context.getSystemService(Context.TELEPHONY_SERVICE);
+        this.powerManager = (PowerManager) this.context.getSystemService(Context.POWER_SERVICE);
+    }
+    
+    /**
+     * Registers the callbacks; must be called on a thread with a looper
+     */
+    public void start() {
+        if (telephonyManager != null) {
+            phoneStateListener = new PhoneStateListener() {
+                @Override
+                public void onSignalStrengthsChanged(SignalStrength signalStrength) {
+                    setSignalLevel(signalStrength != null ? signalStrength.getLevel() : -1);
+                }
+                
+                @Override
+                public void onServiceStateChanged(ServiceState state) {
+                    setServiceState(state != null ? state.getState() : -1);
+                }
+            };
+            try {
+                telephonyManager.listen(phoneStateListener,
+                    PhoneStateListener.LISTEN_SIGNAL_STRENGTHS | PhoneStateListener.LISTEN_SERVICE_STATE);
+            } catch (Exception e) {
+                Log.e(TAG, "Radio state unavailable: " + e.getMessage());
+                phoneStateListener = null;
+            }
+        }
+        
+        powerReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                onPowerChanged(intent);
+            }
+        };
+        IntentFilter filter = new IntentFilter(Intent.ACTION_BATTERY_CHANGED);
+        filter.addAction(PowerManager.ACTION_POWER_SAVE_MODE_CHANGED);
+        filter.addAction(PowerManager.ACTION_DEVICE_IDLE_MODE_CHANGED);
+        // Battery changes are sticky, so the current level is delivered right away
+        onPowerChanged(context.registerReceiver(powerReceiver, filter));
+    }
+    
+    public void stop() {
+        if (phoneStateListener != null) {
+            telephonyManager.listen(phoneStateListener, PhoneStateListener.LISTEN_NONE);
+            phoneStateListener = null;
+        }
+        if (powerReceiver != null) {
+            try {
+                context.unregisterReceiver(powerReceiver);
+            } catch (Exception e) {
+                Log.e(TAG, "Error unregistering power receiver: " + e.getMessage());
+            }
+            powerReceiver = null;
+        }
+    }
+    
+    /**
+     * Records the outcome of one send for the recent failure rate
+     */
+    public synchronized void recordSend(boolean failed) {
+        int word = outcomeIndex >>> 6;
+        long bit = 1L << (outcomeIndex & 63);
+        if (outcomeCount == AppConfig.HEALTH_FAILURE_WINDOW) {
+            if ((outcomes[word] & bit) != 0) {
+                failureCount--;
+            }
+        } else {
+            outcomeCount++;
+        }
+        if (failed) {
+            outcomes[word] |= bit;
+            failureCount++;
+        } else {
+            outcomes[word] &= ~bit;
+        }
+        outcomeIndex = (outcomeIndex + 1) % AppConfig.HEALTH_FAILURE_WINDOW;
+        header = null;
+    }
+    
+    /**
+     * Compact form for the probe header, e.g.
+     * sig=3;svc=0;bat=87;chg=1;psave=0;idle=0;rq=2;sq=5;inf=1;fail=4
+     * (fail is the percentage of the last sends that failed, -1 before any send)
+     */
+    public synchronized String toHeaderValue(int replyQueue, int statusBacklog, int inFlight) {
+        if (replyQueue != this.replyQueue || statusBacklog != this.statusBacklog || inFlight != this.inFlight) {
+            this.replyQueue = replyQueue;
+            this.statusBacklog = statusBacklog;
+            this.inFlight = inFlight;
+            header = null;
+        }
+        if (header == null) {
+            header = "sig=" + signalLevel
+                + ";svc=" + serviceState
+                + ";bat=" + batteryPercent
+                + ";chg=" + (charging ? 1 : 0)
+                + ";psave=" + (powerSave ? 1 : 0)
+                + ";idle=" + (idle ? 1 : 0)
+                + ";rq=" + replyQueue
+                + ";sq=" + statusBacklog
+                + ";inf=" + inFlight
+                + ";fail=" + (outcomeCount > 0 ? failureCount * 100 / outcomeCount : -1);
+        }
+        return header;
+    }
+    
+    private synchronized void setSignalLevel(int level) {
+        if (level != signalLevel) {
+            signalLevel = level;
+            header = null;
+        }
+    }
+    
+    private synchronized void setServiceState(int state) {
+        if (state != serviceState) {
+            serviceState = state;
+            header = null;
+        }
+    }
+    
+    private synchronized void onPowerChanged(Intent intent) {
+        int percent = batteryPercent;
+        boolean plugged = charging;
+        if (intent != null && Intent.ACTION_BATTERY_CHANGED.equals(intent.getAction())) {
+            int level = intent.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+            int scale = intent.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+            percent = level >= 0 && scale > 0 ? level * 100 / scale : -1;
+            plugged = intent.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+        }
+        boolean saving = powerManager != null && powerManager.isPowerSaveMode();
+        boolean dozing = powerManager != null && powerManager.isDeviceIdleMode();
+        
+        // Battery broadcasts also fire for voltage and temperature changes, which are not reported
+        if (percent != batteryPercent || plugged != charging || saving != powerSave || dozing != idle) {
+            batteryPercent = percent;
+            charging = plugged;
+            powerSave = saving;
+            idle = dozing;
+            header = null;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,157 @@
+package com.example.smssender;
+
+import android.os.SystemClock;
+import org.json.JSONObject;
+import java.util.ArrayDeque;
+import java.util.Locale;
+
+/**
+ * Multi-lane priority queue in front of SMS dispatch
+ *
+ * Lanes are served in priority order (urgent, normal, bulk) with two
+ * starvation guards: a lane whose head has waited longer than the max wait
+ * is served first, and the bulk lane gets one slot after every
+ * PRIORITY_FAIRNESS_RATIO higher-priority dispatches while it is non-empty.
+ */
+public class DispatchQueue<T> {
+    
+    public static final int LANE_URGENT = 0;
+    public static final int LANE_NORMAL = 1;
+    public static final int LANE_BULK = 2;
+    private static final int LANE_COUNT = 3;
+    private static final String[] LANE_NAMES = {"urgent", "normal", "bulk"};
+    
+    private static class Entry<T> {
+        final T item;
+        final long enqueuedAt;
+        
+        Entry(T item, long enqueuedAt) {
+            this.item = item;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+    
+    private final ArrayDeque<Entry<T>>[] lanes;
+    private final long maxWaitMs;
+    private final int fairnessRatio;
+    private int dispatchedSinceBulk = 0;
+    
+    // Per lane wait statistics
+    private final long[] dispatchedCount = new long[LANE_COUNT];
+    private final long[] totalWaitMs = new long[LANE_COUNT];
+    private final long[] maxWaitSeenMs = new long[LANE_COUNT];
+    
+    @SuppressWarnings("unchecked")
+    public DispatchQueue(long maxWaitMs, int fairnessRatio) {
+        this.maxWaitMs = maxWaitMs;
+        this.fairnessRatio = fairnessRatio;
+        lanes = new ArrayDeque[LANE_COUNT];
+        for (int i = 0; i < LANE_COUNT; i++) {
+            lanes[i] = new ArrayDeque<>();
+        }
+    }
+    
+    /**
+     * Maps a task's "priority" field to a lane
+     * Accepts names (urgent/otp/pin/high, normal, bulk/low) or lane numbers 0-2
+     */
+    public static int laneFor(String priority) {
+        if (priority == null || priority.isEmpty()) {
+            return LANE_NORMAL;
+        }
+        String p = priority.trim().toLowerCase(Locale.ROOT);
+        if (p.equals("urgent") || p.equals("high") || p.equals("otp") || p.equals("pin") || p.equals("0")) {
+            return LANE_URGENT;
+        }
+        if (p.equals("bulk") || p.equals("low") || p.equals("2")) {
+            return LANE_BULK;
+        }
+        return LANE_NORMAL;
+    }
+    
+    public synchronized void offer(T item, int lane) {
+        if (lane < 0 || lane >= LANE_COUNT) {
+            lane = LANE_NORMAL;
+        }
+        lanes[lane].addLast(new Entry<>(item, SystemClock.elapsedRealtime()));
+    }
+    
+    public synchronized T poll() {
+        long now = SystemClock.elapsedRealtime();
+        int lane = selectLane(now);
+        if (lane < 0) {
+            return null;
+        }
+        
+        Entry<T> entry = lanes[lane].pollFirst();
+        if (lane == LANE_BULK) {
+            dispatchedSinceBulk = 0;
+        } else if (!lanes[LANE_BULK].isEmpty()) {
+            dispatchedSinceBulk++;
+        }
+        
+        long waited = now - entry.enqueuedAt;
+        dispatchedCount[lane]++;
+        totalWaitMs[lane] += waited;
+        if (waited > maxWaitSeenMs[lane]) {
+            maxWaitSeenMs[lane] = waited;
+        }
+        return entry.item;
+    }
+    
+    private int selectLane(long now) {
+        // Aged heads first, oldest wins
+        int agedLane = -1;
+        long oldest = Long.MAX_VALUE;
+        for (int i = 0; i < LANE_COUNT; i++) {
+            Entry<T> head = lanes[i].peekFirst();
+            if (head != null && now - head.enqueuedAt > maxWaitMs && head.enqueuedAt < oldest) {
+                oldest = head.enqueuedAt;
+                agedLane = i;
+            }
+        }
+        if (agedLane >= 0) {
+            return agedLane;
+        }
+        
+        if (!lanes[LANE_BULK].isEmpty() && dispatchedSinceBulk >= fairnessRatio) {
+            return LANE_BULK;
+        }
+        
+        for (int i = 0; i < LANE_COUNT; i++) {
+            if (!lanes[i].isEmpty()) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    public synchronized int size() {
+        int total = 0;
+        for (ArrayDeque<Entry<T>> lane : lanes) {
+            total += lane.size();
+        }
+        return total;
+    }
+    
+    public synchronized long getAverageWaitMs(int lane) {
+        return dispatchedCount[lane] > 0 ? totalWaitMs[lane] / dispatchedCount[lane] : 0;
+    }
+    
+    public synchronized JSONObject getWaitStats() {
+        JSONObject json = new JSONObject();
+        try {
+            for (int i = 0; i < LANE_COUNT; i++) {
+                JSONObject lane = new JSONObject();
+                lane.put("queued", lanes[i].size());
+                lane.put("dispatched", dispatchedCount[i]);
+                lane.put("avg_wait_ms", dispatchedCount[i] > 0 ? totalWaitMs[i] / dispatchedCount[i] : 0);
+                lane.put("max_wait_ms", maxWaitSeenMs[i]);
+                json.put(LANE_NAMES[i], lane);
+            }
+        } catch (Exception e) {
+            // JSONObject.put only throws for non-finite numbers
+        }
+        return json;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,70 @@
+package com.example.smssender;
+
+import org.json.JSONObject;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tasks the service holds, from parsing until their last result
+ *
+ * Every held task is keyed by queue_id until it is finished; tasks no
+ * dispatch worker has picked up yet also wait in the lane queue. Fetch
+ * threads, dispatch workers and the result receivers all share this state.
+ */
+public class DispatchState<T> {
+    
+    private final Map<Integer, T> held = new ConcurrentHashMap<>();
+    private final DispatchQueue<T> queue;
+    
+    public DispatchState(long maxWaitMs, int fairnessRatio) {
+        queue = new DispatchQueue<>(maxWaitMs, fairnessRatio);
+    }
+    
+    /**
+     * Holds a task from now on; it is not dispatched until enqueued
+     */
+    public void hold(int queueId, T task) {
+        held.put(queueId, task);
+    }
+    
+    public void enqueue(T task, int lane) {
+        queue.offer(task, lane);
+    }
+    
+    /**
+     * Next task for a dispatch worker, or null if none is waiting
+     */
+    public T next() {
+        return queue.poll();
+    }
+    
+    public T get(int queueId) {
+        return held.get(queueId);
+    }
+    
+    public boolean isHeld(int queueId) {
+        return held.containsKey(queueId);
+    }
+    
+    /**
+     * Releases a task; only the first call for a task returns it
+     */
+    public T finish(int queueId) {
+        return held.remove(queueId);
+    }
+    
+    /**
+     * Tasks held, queued or in flight
+     */
+    public int size() {
+        return held.size();
+    }
+    
+    public int queued() {
+        return queue.size();
+    }
+    
+    public JSONObject getWaitStats() {
+        return queue.getWaitStats();
+    }
+}
\ No newline at end of file
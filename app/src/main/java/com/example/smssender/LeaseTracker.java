@@ -0,0 +1,138 @@
+package com.example.smssender;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Task leases and send capacity for fleet coordination
+ *
+ * A task may carry a lease from the server (lease_id plus lease_until or
+ * lease_seconds). The device renews leases of in-flight SMS before they run
+ * out and drops queued tasks whose lease has already expired, since the
+ * server may have handed them to another phone. Sends are counted in a
+ * rolling window so the device can report how much of its sending quota is
+ * free and the server can shard work towards idle phones.
+ */
+public class LeaseTracker {
+    
+    private static class Lease {
+        final int queueId;
+        final String leaseId;
+        long deadline;          // wall clock, ms
+        
+        Lease(int queueId, String leaseId, long deadline) {
+            this.queueId = queueId;
+            this.leaseId = leaseId;
+            this.deadline = deadline;
+        }
+    }
+    
+    private final Map<Integer, Lease> leases = new HashMap<>();
+    private final long[] sendTimes;     // ring of recent send times, oldest at sendIndex
+    private final long quotaWindowMs;
+    private int sendIndex = 0;
+    
+    public LeaseTracker(int quotaCount, long quotaWindowMs) {
+        this.sendTimes = new long[quotaCount];
+        this.quotaWindowMs = quotaWindowMs;
+    }
+    
+    /**
+     * Records the lease of a task, if it carries one
+     */
+    public synchronized void track(int queueId, JSONObject task, long now) {
+        long deadline;
+        if (task.has("lease_until")) {
+            deadline = task.optLong("lease_until", 0);
+        } else if (task.has("lease_seconds")) {
+            deadline = now + task.optLong("lease_seconds", 0) * 1000;
+        } else {
+            return;
+        }
+        if (deadline > 0) {
+            leases.put(queueId, new Lease(queueId, task.optString("lease_id", String.valueOf(queueId)), deadline));
+        }
+    }
+    
+    public synchronized void release(int queueId) {
+        leases.remove(queueId);
+    }
+    
+    /**
+     * True if the task was leased and the lease ran out; unleased tasks never expire
+     */
+    public synchronized boolean isExpired(int queueId, long now) {
+        Lease lease = leases.get(queueId);
+        return lease != null && lease.deadline <= now;
+    }
+    
+    public synchronized boolean hasLeases() {
+        return !leases.isEmpty();
+    }
+    
+    /**
+     * Live leases that expire within the margin, as the body of a renewal request
+     */
+    public synchronized JSONArray getDueForRenewal(long now, long marginMs) {
+        JSONArray due = new JSONArray();
+        try {
+            for (Lease lease : leases.values()) {
+                if (lease.deadline > now && lease.deadline - now <= marginMs) {
+                    JSONObject item = new JSONObject();
+                    item.put("queue_id", lease.queueId);
+                    item.put("lease_id", lease.leaseId);
+                    due.put(item);
+                }
+            }
+        } catch (Exception e) {
+            // JSONObject.put only throws for non-finite numbers
+        }
+        return due;
+    }
+    
+    /**
+     * Applies the server's renewal response ({"leases": [{"queue_id", "lease_until"}]})
+     * Leases missing from the response keep their old deadline and lapse.
+     * Returns the number of leases extended.
+     */
+    public synchronized int applyRenewals(JSONObject response) {
+        JSONArray renewed = response.optJSONArray("leases");
+        if (renewed == null) {
+            return 0;
+        }
+        int extended = 0;
+        for (int i = 0; i < renewed.length(); i++) {
+            JSONObject item = renewed.optJSONObject(i);
+            if (item == null) {
+                continue;
+            }
+            Lease lease = leases.get(item.optInt("queue_id", -1));
+            long deadline = item.optLong("lease_until", 0);
+            if (lease != null && deadline > lease.deadline) {
+                lease.deadline = deadline;
+                extended++;
+            }
+        }
+        return extended;
+    }
+    
+    public synchronized void recordSend(long now) {
+        sendTimes[sendIndex] = now;
+        sendIndex = (sendIndex + 1) % sendTimes.length;
+    }
+    
+    /**
+     * Sends still allowed in the current rolling window
+     */
+    public synchronized int getFreeQuota(long now) {
+        int used = 0;
+        for (long sendTime : sendTimes) {
+            if (sendTime > 0 && now - sendTime < quotaWindowMs) {
+                used++;
+            }
+        }
+        return sendTimes.length - used;
+    }
+}
\ No newline at end of file
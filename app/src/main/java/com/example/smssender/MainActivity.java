@@ -67,17 +67,18 @@ public class MainActivity extends AppCompatActivity {
     private int pendingCounter = 0;
     private int failedCounter = 0;
     private SharedPreferences logPrefs;
-    private SharedPreferences replyStatsPrefs;
     private Handler logUpdateHandler = new Handler();
     private SimpleDateFormat dateFormat = new SimpleDateFormat("HH:mm:ss", Locale.getDefault());
     private Handler handler = new Handler();
     private boolean isProbing = false;
     private Runnable probeRunnable;
     private BroadcastReceiver statisticsReceiver;
+    private boolean stateLoaded = false;
     
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        StartupTrace.begin(StartupTrace.UI);
         setContentView(R.layout.activity_main);
         
         probeButton = findViewById(R.id.probeButton);
@@ -101,11 +102,6 @@ public class MainActivity extends AppCompatActivity {
         smsLogTab = findViewById(R.id.smsLogTab);
         replyLogTab = findViewById(R.id.replyLogTab);
         
-        logPrefs = getSharedPreferences("SmsProbeLog", MODE_PRIVATE);
-        replyLogPrefs = getSharedPreferences("ReplyLog", MODE_PRIVATE);
-        replyStatsPrefs = getSharedPreferences("ReplyStats", MODE_PRIVATE);
-        settingsPrefs = getSharedPreferences("AppSettings", MODE_PRIVATE);
-        
         // Set app name and subtitle from config
         appNameText.setText(AppConfig.APP_NAME);
         appSubtitleText.setText(AppConfig.APP_SUBTITLE);
@@ -114,25 +110,8 @@ public class MainActivity extends AppCompatActivity {
         intervalInput.setText(String.valueOf(AppConfig.DEFAULT_PROBE_INTERVAL));
         replyIntervalInput.setText(String.valueOf(AppConfig.DEFAULT_REPLY_INTERVAL));
         
-        // Load saved phone number or use default
-        SharedPreferences appConfigPrefs = getSharedPreferences("AppConfig", MODE_PRIVATE);
-        String savedPhoneNumber = appConfigPrefs.getString("our_phone_number", AppConfig.DEFAULT_PHONE_NUMBER);
-        phoneNumberInput.setText(savedPhoneNumber);
-        
-        // Set up logging checkbox
-        boolean loggingEnabled = settingsPrefs.getBoolean("logging_enabled", AppConfig.LOGGING_ENABLED_DEFAULT);
-        enableLoggingCheckbox.setChecked(loggingEnabled);
-        enableLoggingCheckbox.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
-            @Override
-            public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
-                settingsPrefs.edit().putBoolean("logging_enabled", isChecked).apply();
-                if (!isChecked) {
-                    logText.setText("Logging disabled");
-                } else {
-                    updateLog();
-                }
-            }
-        });
+        // Saved settings, logs and reply state are read off the UI thread
+        loadStateInBackground();
         
         // Set up log tab buttons
         smsLogTab.setOnClickListener(v -> {
@@ -178,9 +157,6 @@ public class MainActivity extends AppCompatActivity {
         // Request battery optimization exemption for continuous background operation
         requestBatteryOptimizationExemption();
         
-        // Start updating logs from service
-        startLogUpdates();
-
         // Register receiver for statistics updates
         registerStatisticsReceiver();
 
@@ -194,6 +170,76 @@ public class MainActivity extends AppCompatActivity {
                 }
             }
         });
+        
+        getWindow().getDecorView().post(new Runnable() {
+            @Override
+            public void run() {
+                long elapsed = StartupTrace.mark(StartupTrace.UI, "first_frame");
+                if (elapsed >= 0) {
+                    addLog("Startup: first frame after " + elapsed + "ms");
+                }
+            }
+        });
+    }
+    
+    private void loadStateInBackground() {
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                // The first read of each prefs file blocks until it is parsed
+                final SharedPreferences loadedLogPrefs = getSharedPreferences("SmsProbeLog", MODE_PRIVATE);
+                final SharedPreferences loadedReplyLogPrefs = getSharedPreferences("ReplyLog", MODE_PRIVATE);
+                final SharedPreferences loadedSettingsPrefs = getSharedPreferences("AppSettings", MODE_PRIVATE);
+                loadedLogPrefs.contains("log");
+                loadedReplyLogPrefs.contains("log");
+                SettingsRegistry.Snapshot settings = SettingsRegistry.getInstance(MainActivity.this).get();
+                final boolean loggingEnabled = settings.loggingEnabled;
+                final String savedPhoneNumber = settings.ourPhoneNumber;
+                ReplyStatsAggregator.getInstance(MainActivity.this);
+                ReplyQueueManager.getInstance(MainActivity.this);
+                
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        logPrefs = loadedLogPrefs;
+                        replyLogPrefs = loadedReplyLogPrefs;
+                        settingsPrefs = loadedSettingsPrefs;
+                        onStateLoaded(savedPhoneNumber, loggingEnabled);
+                    }
+                });
+            }
+        }, "MainActivityLoader").start();
+    }
+    
+    private void onStateLoaded(String savedPhoneNumber, boolean loggingEnabled) {
+        // Load saved phone number or use default
+        phoneNumberInput.setText(savedPhoneNumber);
+        
+        // Set up logging checkbox
+        enableLoggingCheckbox.setChecked(loggingEnabled);
+        enableLoggingCheckbox.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
+            @Override
+            public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
+                settingsPrefs.edit().putBoolean("logging_enabled", isChecked).apply();
+                if (!isChecked) {
+                    logText.setText("Logging disabled");
+                } else {
+                    updateLog();
+                }
+            }
+        });
+        
+        stateLoaded = true;
+        updateLogsFromService();
+        updateReplyStatistics();
+        
+        // Start updating logs from service
+        startLogUpdates();
+        
+        long elapsed = StartupTrace.mark(StartupTrace.UI, "state_loaded");
+        if (elapsed >= 0) {
+            addLog("Startup: state loaded after " + elapsed + "ms");
+        }
     }
 
     @Override
@@ -369,7 +415,11 @@ public class MainActivity extends AppCompatActivity {
     }
     
     private void updateLogsFromService() {
-        boolean loggingEnabled = settingsPrefs.getBoolean("logging_enabled", AppConfig.LOGGING_ENABLED_DEFAULT);
+        if (!stateLoaded) {
+            return;
+        }
+        
+        boolean loggingEnabled = SettingsRegistry.getInstance(this).get().loggingEnabled;
         if (!loggingEnabled) {
             logText.setText("Logging disabled");
             return;
@@ -394,25 +444,34 @@ public class MainActivity extends AppCompatActivity {
     }
     
     private void updateReplyStatistics() {
-        // Update total replies
-        int totalReplies = replyStatsPrefs.getInt("total_replies", 0);
-        totalRepliesCount.setText(String.valueOf(totalReplies));
+        if (!stateLoaded) {
+            return;
+        }
+        
+        // Counters come from the aggregator so updates not yet flushed to prefs are shown
+        ReplyStatsAggregator replyStats = ReplyStatsAggregator.getInstance(this);
+        
+        // Update total replies, with the rate over the last hour
+        long totalReplies = replyStats.getCount("total_replies");
+        long lastHour = replyStats.getRepliesLastHour();
+        totalRepliesCount.setText(lastHour > 0 ? totalReplies + " (" + lastHour + "/h)" : String.valueOf(totalReplies));
         
         // Update PIN confirmations
-        int pinConfirmations = replyStatsPrefs.getInt("reply_count_pin_confirmation", 0);
+        long pinConfirmations = replyStats.getCount("reply_count_pin_confirmation");
         pinConfirmationsCount.setText(String.valueOf(pinConfirmations));
         
         // Update queue size
         try {
             ReplyQueueManager queueManager = ReplyQueueManager.getInstance(this);
             int queueSize = queueManager.getQueueSize();
-            repliesQueuedCount.setText(String.valueOf(queueSize));
+            // The stored backlog is still being parsed until the manager is ready
+            repliesQueuedCount.setText(queueManager.isReady() ? String.valueOf(queueSize) : "…");
         } catch (Exception e) {
             repliesQueuedCount.setText("0");
         }
         
         // Update last sync time
-        long lastSyncTime = replyStatsPrefs.getLong("last_reply_sync", 0);
+        long lastSyncTime = replyStats.getCount("last_reply_sync");
         if (lastSyncTime > 0) {
             Date syncDate = new Date(lastSyncTime);
             SimpleDateFormat format = new SimpleDateFormat("HH:mm:ss", Locale.getDefault());
@@ -0,0 +1,129 @@
+package com.example.smssender;
+
+import android.os.SystemClock;
+import org.json.JSONArray;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Aggregates per-segment send and delivery results of multipart SMS
+ *
+ * Every part carries its own result intent. Results are merged into small
+ * per-message bitmaps so a message is reported "sent" or "delivered" only
+ * once all of its parts have completed, and the first failing part fails the
+ * whole message. Per-segment latency is kept for status reports.
+ */
+public class MultipartTracker {
+    
+    public static final int MAX_PARTS = 64;
+    
+    // Outcomes of recording a part result
+    public static final int PENDING = 0;        // other parts still outstanding, or already reported
+    public static final int COMPLETE = 1;       // last outstanding part succeeded
+    public static final int FAILED = 2;         // first failing part of the message
+    
+    private static class Message {
+        final int partCount;
+        final long allPartsMask;
+        final long startTime;
+        final long[] sentAt;
+        final long[] deliveredAt;
+        long sentMask = 0;
+        long deliveredMask = 0;
+        boolean sendFailed = false;
+        boolean deliveryFailed = false;
+        
+        Message(int partCount, long startTime) {
+            this.partCount = partCount;
+            this.allPartsMask = partCount == MAX_PARTS ? -1L : (1L << partCount) - 1;
+            this.startTime = startTime;
+            this.sentAt = new long[partCount];
+            this.deliveredAt = new long[partCount];
+        }
+    }
+    
+    private final Map<Integer, Message> messages = new HashMap<>();
+    
+    public synchronized void begin(int queueId, int partCount) {
+        int parts = Math.max(1, Math.min(partCount, MAX_PARTS));
+        messages.put(queueId, new Message(parts, SystemClock.elapsedRealtime()));
+    }
+    
+    public synchronized int onPartSent(int queueId, int partIndex, boolean success) {
+        Message message = messages.get(queueId);
+        if (message == null) {
+            // Untracked (e.g. service restarted mid-send): report each result as-is
+            return success ? COMPLETE : FAILED;
+        }
+        if (message.sendFailed || partIndex < 0 || partIndex >= message.partCount) {
+            return PENDING;
+        }
+        if (!success) {
+            message.sendFailed = true;
+            return FAILED;
+        }
+        
+        long bit = 1L << partIndex;
+        if ((message.sentMask & bit) != 0) {
+            return PENDING;
+        }
+        message.sentMask |= bit;
+        message.sentAt[partIndex] = SystemClock.elapsedRealtime();
+        return message.sentMask == message.allPartsMask ? COMPLETE : PENDING;
+    }
+    
+    public synchronized int onPartDelivered(int queueId, int partIndex, boolean success) {
+        Message message = messages.get(queueId);
+        if (message == null) {
+            return success ? COMPLETE : FAILED;
+        }
+        if (message.deliveryFailed || partIndex < 0 || partIndex >= message.partCount) {
+            return PENDING;
+        }
+        if (!success) {
+            message.deliveryFailed = true;
+            return FAILED;
+        }
+        
+        long bit = 1L << partIndex;
+        if ((message.deliveredMask & bit) != 0) {
+            return PENDING;
+        }
+        message.deliveredMask |= bit;
+        message.deliveredAt[partIndex] = SystemClock.elapsedRealtime();
+        return message.deliveredMask == message.allPartsMask ? COMPLETE : PENDING;
+    }
+    
+    public synchronized int getPartCount(int queueId) {
+        Message message = messages.get(queueId);
+        return message != null ? message.partCount : 0;
+    }
+    
+    /**
+     * Milliseconds from send to the sent callback of each part (-1 while outstanding)
+     */
+    public synchronized JSONArray getSentLatencies(int queueId) {
+        Message message = messages.get(queueId);
+        return message != null ? latencies(message, message.sentAt) : null;
+    }
+    
+    /**
+     * Milliseconds from send to the delivery report of each part (-1 while outstanding)
+     */
+    public synchronized JSONArray getDeliveryLatencies(int queueId) {
+        Message message = messages.get(queueId);
+        return message != null ? latencies(message, message.deliveredAt) : null;
+    }
+    
+    public synchronized void remove(int queueId) {
+        messages.remove(queueId);
+    }
+    
+    private JSONArray latencies(Message message, long[] times) {
+        JSONArray array = new JSONArray();
+        for (int i = 0; i < message.partCount; i++) {
+            array.put(times[i] > 0 ? times[i] - message.startTime : -1);
+        }
+        return array;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,149 @@
+package com.example.smssender;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Phone number normalizer shared by dispatch, shipment correlation and replies
+ *
+ * A single hand-written scan strips separators and recognises the
+ * international prefixes (+, 00, bare country code) and the trunk prefix of
+ * the home country, producing a canonical E.164 key plus the local dial form.
+ * Results are kept in a small LRU cache since the same recipients repeat
+ * across tasks and replies.
+ */
+public class PhoneNumberNormalizer {
+    
+    public static class Number {
+        public final String cleaned;    // digits and a leading +, as supplied
+        public final String e164;       // canonical key, e.g. +38970123456
+        public final String local;      // home-country dial form, e.g. 070123456
+        
+        Number(String cleaned, String e164, String local) {
+            this.cleaned = cleaned;
+            this.e164 = e164;
+            this.local = local;
+        }
+    }
+    
+    private static PhoneNumberNormalizer instance;
+    
+    private final String countryCode;
+    private final String trunkPrefix;
+    private final int maxNationalLength;
+    private final Map<String, Number> cache;
+    
+    public PhoneNumberNormalizer(String countryCode, String trunkPrefix, int maxNationalLength, final int cacheSize) {
+        this.countryCode = countryCode;
+        this.trunkPrefix = trunkPrefix;
+        this.maxNationalLength = maxNationalLength;
+        this.cache = new LinkedHashMap<String, Number>(cacheSize, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Number> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+    
+    public static synchronized PhoneNumberNormalizer getDefault() {
+        if (instance == null) {
+            instance = new PhoneNumberNormalizer(AppConfig.PHONE_COUNTRY_CODE, AppConfig.PHONE_TRUNK_PREFIX,
+                AppConfig.PHONE_MAX_NATIONAL_LENGTH, AppConfig.PHONE_CACHE_SIZE);
+        }
+        return instance;
+    }
+    
+    public Number normalize(String raw) {
+        if (raw == null) {
+            return null;
+        }
+        synchronized (cache) {
+            Number cached = cache.get(raw);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        
+        Number number = parse(raw);
+        synchronized (cache) {
+            cache.put(raw, number);
+        }
+        return number;
+    }
+    
+    /**
+     * Canonical key for lookups; non-numeric senders map to themselves
+     */
+    public String toE164(String raw) {
+        Number number = normalize(raw);
+        return number != null ? number.e164 : null;
+    }
+    
+    private Number parse(String raw) {
+        // Collect digits, remembering a + that precedes the first digit
+        char[] digits = new char[raw.length()];
+        int count = 0;
+        boolean plus = false;
+        for (int i = 0; i < raw.length(); i++) {
+            char c = raw.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits[count++] = c;
+            } else if (c == '+' && count == 0) {
+                plus = true;
+            }
+        }
+        
+        String cleaned = plus ? "+" + new String(digits, 0, count) : new String(digits, 0, count);
+        if (count == 0) {
+            // Alphanumeric sender IDs (e.g. "Trackify") have no number to normalize
+            String trimmed = raw.trim();
+            return new Number(trimmed, trimmed, trimmed);
+        }
+        
+        int start;
+        boolean international;
+        if (plus) {
+            start = 0;
+            international = true;
+        } else if (count > 2 && digits[0] == '0' && digits[1] == '0') {
+            start = 2;
+            international = true;
+        } else if (count > maxNationalLength && startsWith(digits, 0, count, countryCode)) {
+            // Bare country code, too long to be a national number
+            start = 0;
+            international = true;
+        } else {
+            start = 0;
+            international = false;
+        }
+        
+        String nationalNumber;
+        if (international) {
+            if (!startsWith(digits, start, count, countryCode)) {
+                // Foreign number: the international form is the only dialable one
+                String e164 = "+" + new String(digits, start, count - start);
+                return new Number(cleaned, e164, e164);
+            }
+            nationalNumber = new String(digits, start + countryCode.length(), count - start - countryCode.length());
+        } else if (startsWith(digits, 0, count, trunkPrefix)) {
+            nationalNumber = new String(digits, trunkPrefix.length(), count - trunkPrefix.length());
+        } else {
+            // National number written without the trunk prefix
+            nationalNumber = cleaned;
+        }
+        
+        return new Number(cleaned, "+" + countryCode + nationalNumber, trunkPrefix + nationalNumber);
+    }
+    
+    private static boolean startsWith(char[] digits, int start, int count, String prefix) {
+        if (count - start < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (digits[start + i] != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,238 @@
+package com.example.smssender;
+
+import android.util.Log;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Random;
+
+/**
+ * Push task delivery over a server-sent events stream
+ *
+ * Keeps one long-lived GET open to the push endpoint and hands every "task"
+ * event to the listener. On disconnect it reconnects with exponential backoff
+ * plus jitter; the service falls back to probe polling while disconnected.
+ * While paused the stream is closed and not reopened, so a device that cannot
+ * take more work stops receiving it until resume().
+ */
+public class PushTaskClient {
+    
+    private static final String TAG = "PushTaskClient";
+    
+    public interface Listener {
+        void onConnected();
+        void onTask(String taskJson);
+        void onDisconnected(String reason);
+    }
+    
+    private final String endpoint;
+    private final Listener listener;
+    private final Random random = new Random();
+    
+    private volatile boolean running = false;
+    private volatile boolean connected = false;
+    private volatile boolean paused = false;
+    private volatile int connectTimeout = AppConfig.CONNECTION_TIMEOUT;
+    private final Object pauseLock = new Object();
+    private volatile HttpURLConnection connection;
+    private volatile String lastEventId;
+    private Thread thread;
+    
+    public PushTaskClient(String endpoint, Listener listener) {
+        this.endpoint = endpoint;
+        this.listener = listener;
+    }
+    
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runLoop();
+            }
+        }, "PushTaskClient");
+        thread.start();
+    }
+    
+    public synchronized void stop() {
+        running = false;
+        synchronized (pauseLock) {
+            pauseLock.notifyAll();
+        }
+        HttpURLConnection current = connection;
+        if (current != null) {
+            current.disconnect();
+        }
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+    
+    public boolean isConnected() {
+        return connected;
+    }
+    
+    /**
+     * Connect timeout for the next stream opened (the read timeout stays at the heartbeat timeout)
+     */
+    public void setConnectTimeout(int timeoutMs) {
+        connectTimeout = timeoutMs;
+    }
+    
+    /**
+     * Closes the stream and keeps it closed until resume()
+     */
+    public void pause() {
+        synchronized (pauseLock) {
+            if (paused) {
+                return;
+            }
+            paused = true;
+        }
+        HttpURLConnection current = connection;
+        if (current != null) {
+            current.disconnect();
+        }
+    }
+    
+    public void resume() {
+        synchronized (pauseLock) {
+            if (paused) {
+                paused = false;
+                pauseLock.notifyAll();
+            }
+        }
+    }
+    
+    public boolean isPaused() {
+        return paused;
+    }
+    
+    private void runLoop() {
+        long backoff = AppConfig.PUSH_RECONNECT_MIN_DELAY;
+        
+        while (running) {
+            try {
+                synchronized (pauseLock) {
+                    while (paused && running) {
+                        pauseLock.wait();
+                    }
+                }
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (!running) {
+                break;
+            }
+            
+            String reason = "closed by server";
+            try {
+                openStream();
+                // A stream that opened successfully resets the backoff
+                backoff = AppConfig.PUSH_RECONNECT_MIN_DELAY;
+                readEvents();
+            } catch (Exception e) {
+                reason = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+            } finally {
+                if (paused) {
+                    reason = "paused";
+                }
+                HttpURLConnection current = connection;
+                connection = null;
+                if (current != null) {
+                    current.disconnect();
+                }
+                if (connected) {
+                    connected = false;
+                    listener.onDisconnected(reason);
+                }
+            }
+            
+            if (!running) {
+                break;
+            }
+            if (paused) {
+                // Closed on purpose; reconnect straight away once resumed
+                backoff = AppConfig.PUSH_RECONNECT_MIN_DELAY;
+                continue;
+            }
+            
+            try {
+                // Jitter keeps a fleet of phones from reconnecting in lockstep
+                long delay = backoff / 2 + (long) (random.nextDouble() * (backoff / 2));
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                break;
+            }
+            backoff = Math.min(backoff * 2, AppConfig.PUSH_RECONNECT_MAX_DELAY);
+        }
+    }
+    
+    private void openStream() throws IOException {
+        URL url = new URL(endpoint);
+        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+        conn.setRequestMethod("GET");
+        conn.setConnectTimeout(connectTimeout);
+        // Server sends a comment line at least every heartbeat; silence longer than this is a dead link
+        conn.setReadTimeout(AppConfig.PUSH_HEARTBEAT_TIMEOUT);
+        conn.setRequestProperty("X-API-Key", AppConfig.API_KEY);
+        conn.setRequestProperty("Accept", "text/event-stream");
+        conn.setRequestProperty("Cache-Control", "no-cache");
+        if (lastEventId != null) {
+            conn.setRequestProperty("Last-Event-ID", lastEventId);
+        }
+        connection = conn;
+        
+        int responseCode = conn.getResponseCode();
+        if (responseCode != HttpURLConnection.HTTP_OK) {
+            throw new IOException("Push stream rejected: " + responseCode);
+        }
+        
+        connected = true;
+        listener.onConnected();
+    }
+    
+    private void readEvents() throws IOException {
+        BufferedReader reader = new BufferedReader(
+            new InputStreamReader(connection.getInputStream(), "UTF-8"));
+        try {
+            String eventType = null;
+            StringBuilder data = new StringBuilder();
+            String line;
+            
+            while (running && !paused && (line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    // Blank line terminates an event
+                    if (data.length() > 0 && (eventType == null || "task".equals(eventType))) {
+                        listener.onTask(data.toString());
+                    }
+                    eventType = null;
+                    data.setLength(0);
+                } else if (line.startsWith(":")) {
+                    // Heartbeat comment
+                } else if (line.startsWith("event:")) {
+                    eventType = line.substring(6).trim();
+                } else if (line.startsWith("data:")) {
+                    if (data.length() > 0) {
+                        data.append('\n');
+                    }
+                    data.append(line.substring(5).trim());
+                } else if (line.startsWith("id:")) {
+                    lastEventId = line.substring(3).trim();
+                }
+            }
+        } finally {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                Log.e(TAG, "Error closing push stream: " + e.getMessage());
+            }
+        }
+    }
+}
\ No newline at end of file
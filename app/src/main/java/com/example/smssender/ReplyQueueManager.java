@@ -7,34 +7,69 @@ import android.os.Looper;
 import android.util.Log;
 import org.json.JSONArray;
 import org.json.JSONObject;
-import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 public class ReplyQueueManager {
     
     private static final String TAG = "ReplyQueueManager";
     private static final String REPLY_URL = AppConfig.REPLY_ENDPOINT;
     private static final String API_KEY = AppConfig.API_KEY;
-    private static final int BATCH_SIZE = AppConfig.REPLY_BATCH_SIZE;
     private static final long DEFAULT_BATCH_INTERVAL = AppConfig.REPLY_BATCH_INTERVAL;
     
     private static ReplyQueueManager instance;
     private Context context;
     private List<JSONObject> replyQueue;
     private Handler handler;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
     private boolean isProcessing = false;
-    private long batchInterval = DEFAULT_BATCH_INTERVAL;
-    private Runnable batchProcessor;
+    private volatile long batchInterval = DEFAULT_BATCH_INTERVAL;
+    private volatile Runnable batchProcessor;
+    private RuntimeConfig runtimeConfig;
+    private final AppLog log;
+    private volatile boolean loaded = false;
+    private final List<Runnable> readyCallbacks = new ArrayList<>();
     
     private ReplyQueueManager(Context context) {
         this.context = context.getApplicationContext();
         this.replyQueue = new ArrayList<>();
-        this.handler = new Handler(Looper.getMainLooper());
-        loadQueueFromStorage();
+        // The batch timer shares the service's scheduler thread rather than the main looper
+        this.handler = ServiceScheduler.getInstance().getHandler();
+        this.runtimeConfig = RuntimeConfig.getInstance(context);
+        this.log = AppLog.get(context, TAG, AppLog.REPLY_LOG, " | ");
+        
+        // A large persisted backlog is parsed off the caller's thread; replies queued
+        // meanwhile are kept and appended after the stored ones
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                loadQueueFromStorage();
+            }
+        }, "ReplyQueueLoader").start();
         startBatchProcessor();
+        
+        // Pick up a server-set reply interval without a restart
+        runtimeConfig.addListener(new RuntimeConfig.Listener() {
+            @Override
+            public void onConfigChanged(RuntimeConfig config, Set<String> changedKeys) {
+                if (changedKeys.contains(RuntimeConfig.REPLY_INTERVAL)) {
+                    restartBatchProcessor("Reply interval set by server config");
+                }
+            }
+        });
+        
+        // And a reply interval saved from the UI
+        SettingsRegistry.getInstance(context).addListener(new SettingsRegistry.Listener() {
+            @Override
+            public void onSettingsChanged(SettingsRegistry.Snapshot previous, SettingsRegistry.Snapshot current) {
+                if (previous.replyInterval != current.replyInterval) {
+                    restartBatchProcessor(null);
+                }
+            }
+        });
     }
     
     public static synchronized ReplyQueueManager getInstance(Context context) {
@@ -44,6 +79,26 @@ public class ReplyQueueManager {
         return instance;
     }
     
+    /**
+     * True once the persisted queue has been loaded
+     */
+    public boolean isReady() {
+        return loaded;
+    }
+    
+    /**
+     * Runs the callback on the main thread once the persisted queue has been loaded
+     */
+    public void whenReady(Runnable callback) {
+        synchronized (readyCallbacks) {
+            if (!loaded) {
+                readyCallbacks.add(callback);
+                return;
+            }
+        }
+        mainHandler.post(callback);
+    }
+    
     public synchronized void queueReply(JSONObject reply) {
         replyQueue.add(reply);
         saveQueueToStorage();
@@ -57,15 +112,17 @@ public class ReplyQueueManager {
         }
         
         // If queue is getting large, process immediately
-        if (replyQueue.size() >= BATCH_SIZE) {
+        if (replyQueue.size() >= runtimeConfig.getInt(RuntimeConfig.REPLY_BATCH_SIZE) && !AppConfig.ENABLE_SYNC_ENVELOPE) {
             processBatch();
         }
     }
     
     private void startBatchProcessor() {
         // Load interval from preferences
-        SharedPreferences prefs = context.getSharedPreferences("sms_prober", Context.MODE_PRIVATE);
-        long replyInterval = prefs.getLong("reply_interval", AppConfig.DEFAULT_REPLY_INTERVAL);
+        long replyInterval = SettingsRegistry.getInstance(context).get().replyInterval;
+        if (runtimeConfig.isOverridden(RuntimeConfig.REPLY_INTERVAL)) {
+            replyInterval = runtimeConfig.getLong(RuntimeConfig.REPLY_INTERVAL);
+        }
         batchInterval = replyInterval * 1000; // Convert seconds to milliseconds
         
         // Create the batch processor runnable
@@ -86,33 +143,59 @@ public class ReplyQueueManager {
         batchInterval = intervalSeconds * 1000;
         
         // Cancel current processor and restart with new interval
-        if (batchProcessor != null) {
-            handler.removeCallbacks(batchProcessor);
-            startBatchProcessor();
-        }
+        restartBatchProcessor(null);
         
         addToLog("Reply interval updated to " + intervalSeconds + "s");
     }
     
+    /**
+     * Replaces the batch timer on the scheduler thread, where the timer itself runs,
+     * so a batch running meanwhile can't re-post the old timer after it was removed
+     */
+    private void restartBatchProcessor(final String reason) {
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (batchProcessor == null) {
+                    return;
+                }
+                handler.removeCallbacks(batchProcessor);
+                startBatchProcessor();
+                if (reason != null) {
+                    addToLog(reason + ": " + (batchInterval / 1000) + "s");
+                }
+            }
+        });
+    }
+    
     private synchronized void processBatch() {
         if (isProcessing) {
             addToLog("Reply processor: Still processing previous batch");
             return;
         }
         
+        if (!loaded) {
+            return;
+        }
+        
         if (replyQueue.isEmpty()) {
-            addToLog("Reply processor: Queue empty, checking for replies...");
-            // Could optionally send an empty heartbeat to server here
-            // For now, just log to show it's running
+            log.debug("Reply processor: Queue empty, checking for replies...");
+            // No heartbeat needed: queue depth reaches the server in the probe's X-Device-Health header
             updateStatistics();
             return;
         }
         
+        // Replies wait offline; the connectivity gate forces a sync when the network returns.
+        // In sync mode they ride the service's sync envelope instead of a request of their own.
+        if (!ConnectivityGate.getInstance(context).isOnline() || AppConfig.ENABLE_SYNC_ENVELOPE) {
+            return;
+        }
+        
         isProcessing = true;
         
         // Create batch to send
         final List<JSONObject> batch = new ArrayList<>();
-        int batchCount = Math.min(replyQueue.size(), BATCH_SIZE);
+        int batchCount = Math.min(replyQueue.size(), runtimeConfig.getInt(RuntimeConfig.REPLY_BATCH_SIZE));
         
         for (int i = 0; i < batchCount; i++) {
             batch.add(replyQueue.get(0));
@@ -124,12 +207,18 @@ public class ReplyQueueManager {
         
         addToLog("Processing batch of " + batchCount + " replies (Queue remaining: " + replyQueue.size() + ")");
         
-        // Send batch in background
+        // Send batch in background, keeping the CPU awake only for the upload
+        final WakeLockScheduler.Burst burst = WakeLockScheduler.getInstance(context)
+            .begin(WakeLockScheduler.TASK_REPLY_UPLOAD);
         new Thread(new Runnable() {
             @Override
             public void run() {
-                sendBatchToServer(batch);
-                isProcessing = false;
+                try {
+                    sendBatchToServer(batch);
+                } finally {
+                    isProcessing = false;
+                    WakeLockScheduler.getInstance(context).end(burst);
+                }
             }
         }).start();
     }
@@ -137,15 +226,15 @@ public class ReplyQueueManager {
     private void sendBatchToServer(List<JSONObject> batch) {
         try {
             // Prepare request body
-            String jsonBody;
+            Object body;
             if (batch.size() == 1) {
-                jsonBody = batch.get(0).toString();
+                body = batch.get(0);
             } else {
                 JSONArray array = new JSONArray();
                 for (JSONObject reply : batch) {
                     array.put(reply);
                 }
-                jsonBody = array.toString();
+                body = array;
             }
             
             // Send to server
@@ -153,17 +242,15 @@ public class ReplyQueueManager {
             HttpURLConnection connection = (HttpURLConnection) url.openConnection();
             connection.setRequestMethod("POST");
             connection.setRequestProperty("X-API-Key", API_KEY);
-            connection.setRequestProperty("Content-Type", "application/json");
+            WireFormat.addAcceptHeader(connection);
             connection.setDoOutput(true);
-            connection.setConnectTimeout(AppConfig.CONNECTION_TIMEOUT);
-            connection.setReadTimeout(AppConfig.READ_TIMEOUT);
+            connection.setConnectTimeout(runtimeConfig.getInt(RuntimeConfig.CONNECTION_TIMEOUT));
+            connection.setReadTimeout(runtimeConfig.getInt(RuntimeConfig.READ_TIMEOUT));
             
-            OutputStream os = connection.getOutputStream();
-            os.write(jsonBody.getBytes("UTF-8"));
-            os.flush();
-            os.close();
+            WireFormat.writeBody(connection, body);
             
             int responseCode = connection.getResponseCode();
+            WireFormat.noteResponse(connection);
             
             if (responseCode == HttpURLConnection.HTTP_OK) {
                 Log.d(TAG, "Successfully sent " + batch.size() + " replies to server");
@@ -188,6 +275,39 @@ public class ReplyQueueManager {
         }
     }
     
+    /**
+     * Removes up to one batch of replies for the sync envelope
+     * Every batch taken must be handed back through completeSyncBatch.
+     */
+    public synchronized List<JSONObject> takeSyncBatch() {
+        List<JSONObject> batch = new ArrayList<>();
+        if (!loaded) {
+            return batch;
+        }
+        int batchCount = Math.min(replyQueue.size(), runtimeConfig.getInt(RuntimeConfig.REPLY_BATCH_SIZE));
+        for (int i = 0; i < batchCount; i++) {
+            batch.add(replyQueue.remove(0));
+        }
+        if (batchCount > 0) {
+            saveQueueToStorage();
+        }
+        return batch;
+    }
+    
+    public void completeSyncBatch(List<JSONObject> batch, boolean delivered) {
+        if (batch.isEmpty()) {
+            updateStatistics();
+            return;
+        }
+        if (delivered) {
+            addToLog("✓ Sent " + batch.size() + " replies in sync envelope");
+            updateStatistics(batch.size(), 0);
+        } else {
+            requeueFailedBatch(batch);
+            updateStatistics(0, batch.size());
+        }
+    }
+    
     private synchronized void requeueFailedBatch(List<JSONObject> batch) {
         // Add failed items back to the beginning of the queue
         for (int i = batch.size() - 1; i >= 0; i--) {
@@ -198,6 +318,10 @@ public class ReplyQueueManager {
     }
     
     private void saveQueueToStorage() {
+        // Until the stored queue is merged in, saving would overwrite it with the new replies only
+        if (!loaded) {
+            return;
+        }
         try {
             SharedPreferences prefs = context.getSharedPreferences("ReplyQueue", Context.MODE_PRIVATE);
             JSONArray array = new JSONArray();
@@ -211,46 +335,50 @@ public class ReplyQueueManager {
     }
     
     private void loadQueueFromStorage() {
+        List<JSONObject> stored = new ArrayList<>();
         try {
             SharedPreferences prefs = context.getSharedPreferences("ReplyQueue", Context.MODE_PRIVATE);
             String queueData = prefs.getString("queue", "[]");
             JSONArray array = new JSONArray(queueData);
             
-            replyQueue.clear();
             for (int i = 0; i < array.length(); i++) {
-                replyQueue.add(array.getJSONObject(i));
+                stored.add(array.getJSONObject(i));
             }
             
-            Log.d(TAG, "Loaded " + replyQueue.size() + " replies from storage");
+            Log.d(TAG, "Loaded " + stored.size() + " replies from storage");
             
         } catch (Exception e) {
             Log.e(TAG, "Error loading queue: " + e.getMessage());
         }
+        
+        boolean queuedMeanwhile;
+        synchronized (this) {
+            queuedMeanwhile = !replyQueue.isEmpty();
+            replyQueue.addAll(0, stored);
+            loaded = true;
+            if (queuedMeanwhile) {
+                saveQueueToStorage();
+            }
+        }
+        
+        List<Runnable> callbacks;
+        synchronized (readyCallbacks) {
+            callbacks = new ArrayList<>(readyCallbacks);
+            readyCallbacks.clear();
+        }
+        for (Runnable callback : callbacks) {
+            mainHandler.post(callback);
+        }
     }
     
     private void updateStatistics() {
         // Just update the last check time when called with no parameters
-        SharedPreferences prefs = context.getSharedPreferences("ReplyStats", Context.MODE_PRIVATE);
-        prefs.edit().putLong("last_reply_check", System.currentTimeMillis()).apply();
+        ReplyStatsAggregator.getInstance(context).recordCheck();
     }
     
     private void updateStatistics(int successCount, int failedCount) {
-        SharedPreferences prefs = context.getSharedPreferences("ReplyStats", Context.MODE_PRIVATE);
-        
-        if (successCount > 0) {
-            int totalSent = prefs.getInt("replies_sent_to_server", 0);
-            prefs.edit().putInt("replies_sent_to_server", totalSent + successCount).apply();
-        }
-        
-        if (failedCount > 0) {
-            int totalFailed = prefs.getInt("replies_failed_to_send", 0);
-            prefs.edit().putInt("replies_failed_to_send", totalFailed + failedCount).apply();
-        }
-        
-        // Update last sync time on success
-        if (successCount > 0) {
-            prefs.edit().putLong("last_reply_sync", System.currentTimeMillis()).apply();
-        }
+        // Sent/failed counts and last sync time are flushed to ReplyStats together
+        ReplyStatsAggregator.getInstance(context).recordUpload(successCount, failedCount);
     }
     
     public synchronized int getQueueSize() {
@@ -262,44 +390,6 @@ public class ReplyQueueManager {
     }
     
     private void addToLog(String message) {
-        try {
-            // Check if logging is enabled
-            SharedPreferences settingsPrefs = context.getSharedPreferences("AppSettings", Context.MODE_PRIVATE);
-            boolean loggingEnabled = settingsPrefs.getBoolean("logging_enabled", AppConfig.LOGGING_ENABLED_DEFAULT);
-            if (!loggingEnabled) {
-                return;
-            }
-            
-            // Use separate log for replies
-            SharedPreferences prefs = context.getSharedPreferences("ReplyLog", Context.MODE_PRIVATE);
-            String existingLog = prefs.getString("log", "");
-            
-            // Add timestamp
-            String timestamp = new java.text.SimpleDateFormat("HH:mm:ss").format(new java.util.Date());
-            String newEntry = timestamp + " | " + message;
-            
-            // Combine with existing log
-            String updatedLog = newEntry + "\n" + existingLog;
-            
-            // Keep only last MAX_LOG_ENTRIES lines or MAX_LOG_SIZE characters, whichever is smaller
-            String[] lines = updatedLog.split("\n");
-            StringBuilder trimmedLog = new StringBuilder();
-            int lineCount = 0;
-            int charCount = 0;
-            
-            for (String line : lines) {
-                if (lineCount >= AppConfig.MAX_LOG_ENTRIES || charCount + line.length() > AppConfig.MAX_LOG_SIZE) {
-                    break;
-                }
-                trimmedLog.append(line).append("\n");
-                lineCount++;
-                charCount += line.length() + 1;
-            }
-            
-            prefs.edit().putString("log", trimmedLog.toString()).apply();
-            
-        } catch (Exception e) {
-            Log.e(TAG, "Error adding to log: " + e.getMessage());
-        }
+        log.info(message);
     }
 }
\ No newline at end of file
@@ -0,0 +1,236 @@
+package com.example.smssender;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import org.json.JSONObject;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * In-memory reply statistics with time-bucketed rollups
+ *
+ * Counters are updated in memory under one lock and written to the ReplyStats
+ * prefs in a single edit on a timer, instead of several read-modify-write
+ * cycles per reply that could lose counts. Each metric (reply type, upload
+ * outcome) also keeps per-minute buckets for the last hour and per-hour
+ * buckets for the last day so rates can be read, not just lifetime totals.
+ */
+public class ReplyStatsAggregator {
+    
+    private static final String PREFS_NAME = "ReplyStats";
+    private static final long MINUTE = 60 * 1000;
+    private static final long HOUR = 60 * MINUTE;
+    
+    // Metric names
+    public static final String UPLOAD_SENT = "upload_sent";
+    public static final String UPLOAD_FAILED = "upload_failed";
+    
+    /**
+     * Fixed ring of count buckets; a slot is reset when its time window comes round again
+     */
+    private static class Ring {
+        final long bucketMs;
+        final long[] counts;
+        final long[] windows;
+        
+        Ring(int slots, long bucketMs) {
+            this.bucketMs = bucketMs;
+            this.counts = new long[slots];
+            this.windows = new long[slots];
+        }
+        
+        void add(long now, long count) {
+            long window = now / bucketMs;
+            int slot = (int) (window % counts.length);
+            if (windows[slot] != window) {
+                windows[slot] = window;
+                counts[slot] = 0;
+            }
+            counts[slot] += count;
+        }
+        
+        long sum(long now, int buckets) {
+            long current = now / bucketMs;
+            long total = 0;
+            for (int i = 0; i < counts.length; i++) {
+                if (current - windows[i] < buckets) {
+                    total += counts[i];
+                }
+            }
+            return total;
+        }
+    }
+    
+    private static class Metric {
+        final Ring minutes = new Ring(60, MINUTE);
+        final Ring hours = new Ring(24, HOUR);
+    }
+    
+    private static ReplyStatsAggregator instance;
+    
+    private final SharedPreferences prefs;
+    private final Handler handler;
+    private final Map<String, Long> counters = new HashMap<>();   // persisted lifetime values
+    private final Map<String, Metric> metrics = new HashMap<>();
+    private boolean flushScheduled = false;
+    
+    private final Runnable flushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+    
+    private ReplyStatsAggregator(Context context) {
+        prefs = context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        handler = ServiceScheduler.getInstance().getHandler();
+        
+        // Start from the persisted lifetime counters
+        for (Map.Entry<String, ?> entry : prefs.getAll().entrySet()) {
+            if (entry.getValue() instanceof Number) {
+                counters.put(entry.getKey(), ((Number) entry.getValue()).longValue());
+            }
+        }
+    }
+    
+    public static synchronized ReplyStatsAggregator getInstance(Context context) {
+        if (instance == null) {
+            instance = new ReplyStatsAggregator(context);
+        }
+        return instance;
+    }
+    
+    public synchronized void recordReply(String replyType) {
+        long now = System.currentTimeMillis();
+        increment("reply_count_" + replyType, 1);
+        increment("total_replies", 1);
+        metric("reply_" + replyType).minutes.add(now, 1);
+        metric("reply_" + replyType).hours.add(now, 1);
+        scheduleFlush();
+    }
+    
+    public synchronized void recordUpload(int sentCount, int failedCount) {
+        long now = System.currentTimeMillis();
+        if (sentCount > 0) {
+            increment("replies_sent_to_server", sentCount);
+            counters.put("last_reply_sync", now);
+            metric(UPLOAD_SENT).minutes.add(now, sentCount);
+            metric(UPLOAD_SENT).hours.add(now, sentCount);
+        }
+        if (failedCount > 0) {
+            increment("replies_failed_to_send", failedCount);
+            metric(UPLOAD_FAILED).minutes.add(now, failedCount);
+            metric(UPLOAD_FAILED).hours.add(now, failedCount);
+        }
+        scheduleFlush();
+    }
+    
+    public synchronized void recordCheck() {
+        counters.put("last_reply_check", System.currentTimeMillis());
+        scheduleFlush();
+    }
+    
+    /**
+     * Lifetime value of a ReplyStats counter, including updates not yet flushed
+     */
+    public synchronized long getCount(String key) {
+        Long value = counters.get(key);
+        return value != null ? value : 0;
+    }
+    
+    /**
+     * Count for a metric ("reply_<type>", UPLOAD_SENT, UPLOAD_FAILED) over the last minutes
+     */
+    public synchronized long getLastMinutes(String metricName, int minutes) {
+        Metric metric = metrics.get(metricName);
+        return metric != null ? metric.minutes.sum(System.currentTimeMillis(), Math.min(minutes, 60)) : 0;
+    }
+    
+    public synchronized long getLastHours(String metricName, int hours) {
+        Metric metric = metrics.get(metricName);
+        return metric != null ? metric.hours.sum(System.currentTimeMillis(), Math.min(hours, 24)) : 0;
+    }
+    
+    /**
+     * Sum of all reply types over the last hour
+     */
+    public synchronized long getRepliesLastHour() {
+        long total = 0;
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, Metric> entry : metrics.entrySet()) {
+            if (entry.getKey().startsWith("reply_")) {
+                total += entry.getValue().minutes.sum(now, 60);
+            }
+        }
+        return total;
+    }
+    
+    /**
+     * Compact rates for the upload header: replies_1h=..;sent_1h=..;failed_1h=..;sent_24h=..
+     */
+    public synchronized String toHeaderValue() {
+        return "replies_1h=" + getRepliesLastHour()
+            + ";sent_1h=" + getLastMinutes(UPLOAD_SENT, 60)
+            + ";failed_1h=" + getLastMinutes(UPLOAD_FAILED, 60)
+            + ";sent_24h=" + getLastHours(UPLOAD_SENT, 24);
+    }
+    
+    public synchronized JSONObject toJson() {
+        JSONObject json = new JSONObject();
+        long now = System.currentTimeMillis();
+        try {
+            for (Map.Entry<String, Metric> entry : metrics.entrySet()) {
+                JSONObject metric = new JSONObject();
+                metric.put("last_5m", entry.getValue().minutes.sum(now, 5));
+                metric.put("last_1h", entry.getValue().minutes.sum(now, 60));
+                metric.put("last_24h", entry.getValue().hours.sum(now, 24));
+                json.put(entry.getKey(), metric);
+            }
+        } catch (Exception e) {
+            // JSONObject.put only throws for non-finite numbers
+        }
+        return json;
+    }
+    
+    /**
+     * Writes all lifetime counters in one prefs edit
+     */
+    public synchronized void flush() {
+        handler.removeCallbacks(flushRunnable);
+        flushScheduled = false;
+        
+        SharedPreferences.Editor editor = prefs.edit();
+        for (Map.Entry<String, Long> entry : counters.entrySet()) {
+            String key = entry.getKey();
+            // Timestamps are longs, counters stay ints for the existing readers
+            if (key.startsWith("last_")) {
+                editor.putLong(key, entry.getValue());
+            } else {
+                editor.putInt(key, (int) (long) entry.getValue());
+            }
+        }
+        editor.apply();
+    }
+    
+    private void increment(String key, long count) {
+        Long value = counters.get(key);
+        counters.put(key, (value != null ? value : 0) + count);
+    }
+    
+    private Metric metric(String name) {
+        Metric metric = metrics.get(name);
+        if (metric == null) {
+            metric = new Metric();
+            metrics.put(name, metric);
+        }
+        return metric;
+    }
+    
+    private void scheduleFlush() {
+        if (!flushScheduled) {
+            flushScheduled = true;
+            handler.postDelayed(flushRunnable, AppConfig.REPLY_STATS_FLUSH_INTERVAL);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,85 @@
+package com.example.smssender;
+
+import java.util.BitSet;
+
+/**
+ * Collision-free PendingIntent request codes for in-flight SMS
+ *
+ * A token is a slot index plus a per-slot generation, so codes are unique
+ * among in-flight messages and a recycled slot never resolves a stale token.
+ * The token doubles as the only payload of the sent/delivered intents and
+ * resolves back to the in-flight record in O(1).
+ */
+public class RequestCodeAllocator<T> {
+    
+    private static final int SLOT_BITS = 12;
+    public static final int CAPACITY = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = CAPACITY - 1;
+    private static final int GENERATION_MASK = (1 << 18) - 1;
+    // Keeps tokens clear of the small fixed request codes used elsewhere (0, 1001, 1002)
+    private static final int TOKEN_FLAG = 1 << 30;
+    
+    public static final int NO_TOKEN = -1;
+    
+    private final Object[] records = new Object[CAPACITY];
+    private final int[] generations = new int[CAPACITY];
+    private final BitSet used = new BitSet(CAPACITY);
+    private int cursor = 0;
+    private int inUse = 0;
+    
+    /**
+     * Allocates a token for the record, or NO_TOKEN when all slots are in flight
+     */
+    public synchronized int allocate(T record) {
+        if (inUse == CAPACITY) {
+            return NO_TOKEN;
+        }
+        
+        // Next-fit so a just-released slot is not handed out again straight away
+        int slot = used.nextClearBit(cursor);
+        if (slot >= CAPACITY) {
+            slot = used.nextClearBit(0);
+        }
+        used.set(slot);
+        records[slot] = record;
+        generations[slot] = (generations[slot] + 1) & GENERATION_MASK;
+        cursor = (slot + 1) & SLOT_MASK;
+        inUse++;
+        return TOKEN_FLAG | (generations[slot] << SLOT_BITS) | slot;
+    }
+    
+    @SuppressWarnings("unchecked")
+    public synchronized T resolve(int token) {
+        int slot = slotOf(token);
+        return slot >= 0 ? (T) records[slot] : null;
+    }
+    
+    @SuppressWarnings("unchecked")
+    public synchronized T release(int token) {
+        int slot = slotOf(token);
+        if (slot < 0) {
+            return null;
+        }
+        T record = (T) records[slot];
+        records[slot] = null;
+        used.clear(slot);
+        inUse--;
+        return record;
+    }
+    
+    public synchronized int getInUse() {
+        return inUse;
+    }
+    
+    private int slotOf(int token) {
+        if (token == NO_TOKEN || (token & TOKEN_FLAG) == 0) {
+            return -1;
+        }
+        int slot = token & SLOT_MASK;
+        int generation = (token >>> SLOT_BITS) & GENERATION_MASK;
+        if (!used.get(slot) || generations[slot] != generation) {
+            return -1;
+        }
+        return slot;
+    }
+}
\ No newline at end of file
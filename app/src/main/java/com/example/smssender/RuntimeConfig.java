@@ -0,0 +1,213 @@
+package com.example.smssender;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import org.json.JSONObject;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Runtime-tunable performance settings pushed from the server
+ *
+ * Every setting is seeded from its AppConfig default and can be overridden
+ * by a config payload the server attaches to probe responses (X-Config, tagged
+ * with X-Config-ETag). The device echoes the ETag it holds, so the server only
+ * resends the payload when it changed. Values are clamped to safe bounds,
+ * persisted across restarts, and listeners are told which keys changed on the
+ * main thread.
+ */
+public class RuntimeConfig {
+    
+    private static final String TAG = "RuntimeConfig";
+    private static final String PREFS_NAME = "RuntimeConfig";
+    
+    // Server keys
+    public static final String PROBE_INTERVAL = "probe_interval";                 // seconds
+    public static final String REPLY_INTERVAL = "reply_interval";                 // seconds
+    public static final String REPLY_BATCH_SIZE = "reply_batch_size";
+    public static final String STATUS_BATCH_INTERVAL = "status_batch_interval";   // milliseconds
+    public static final String CONNECTION_TIMEOUT = "connection_timeout";         // milliseconds
+    public static final String READ_TIMEOUT = "read_timeout";                     // milliseconds
+    public static final String SMS_DELIVERY_TIMEOUT = "sms_delivery_timeout";     // seconds
+    
+    private static final String[] KEYS = {
+        PROBE_INTERVAL, REPLY_INTERVAL, REPLY_BATCH_SIZE, STATUS_BATCH_INTERVAL,
+        CONNECTION_TIMEOUT, READ_TIMEOUT, SMS_DELIVERY_TIMEOUT
+    };
+    private static final long[] DEFAULTS = {
+        AppConfig.DEFAULT_PROBE_INTERVAL, AppConfig.DEFAULT_REPLY_INTERVAL, AppConfig.REPLY_BATCH_SIZE,
+        AppConfig.STATUS_BATCH_INTERVAL, AppConfig.CONNECTION_TIMEOUT, AppConfig.READ_TIMEOUT,
+        AppConfig.SMS_DELIVERY_TIMEOUT
+    };
+    private static final long[] MIN = {
+        AppConfig.MIN_PROBE_INTERVAL, AppConfig.MIN_REPLY_INTERVAL, 1, 1000, 1000, 1000, 5
+    };
+    private static final long[] MAX = {
+        AppConfig.MAX_PROBE_INTERVAL, AppConfig.MAX_REPLY_INTERVAL, 100, 300000, 120000, 120000, 3600
+    };
+    
+    public interface Listener {
+        void onConfigChanged(RuntimeConfig config, Set<String> changedKeys);
+    }
+    
+    // Immutable snapshot of the current values, swapped as a whole on update
+    private static class Values {
+        final long[] values;
+        final boolean[] overridden;
+        
+        Values(long[] values, boolean[] overridden) {
+            this.values = values;
+            this.overridden = overridden;
+        }
+    }
+    
+    private static RuntimeConfig instance;
+    private final Context context;
+    private final Handler mainHandler;
+    private final List<Listener> listeners = new ArrayList<>();
+    private volatile Values current;
+    private volatile String etag;
+    
+    private RuntimeConfig(Context context) {
+        this.context = context.getApplicationContext();
+        this.mainHandler = new Handler(Looper.getMainLooper());
+        this.current = new Values(DEFAULTS.clone(), new boolean[KEYS.length]);
+        
+        // Restore the last payload so overrides survive a service restart
+        SharedPreferences prefs = this.context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        String payload = prefs.getString("payload", null);
+        if (payload != null) {
+            try {
+                current = parse(new JSONObject(payload));
+                etag = prefs.getString("etag", null);
+            } catch (Exception e) {
+                Log.e(TAG, "Discarding stored config: " + e.getMessage());
+            }
+        }
+    }
+    
+    public static synchronized RuntimeConfig getInstance(Context context) {
+        if (instance == null) {
+            instance = new RuntimeConfig(context);
+        }
+        return instance;
+    }
+    
+    public long getLong(String key) {
+        return current.values[indexOf(key)];
+    }
+    
+    public int getInt(String key) {
+        return (int) getLong(key);
+    }
+    
+    /**
+     * True when the server supplied this key, as opposed to the AppConfig default
+     */
+    public boolean isOverridden(String key) {
+        return current.overridden[indexOf(key)];
+    }
+    
+    /**
+     * ETag of the payload in effect, sent back so the server can skip unchanged config
+     */
+    public String getETag() {
+        return etag;
+    }
+    
+    public void addListener(Listener listener) {
+        synchronized (listeners) {
+            listeners.add(listener);
+        }
+    }
+    
+    public void removeListener(Listener listener) {
+        synchronized (listeners) {
+            listeners.remove(listener);
+        }
+    }
+    
+    /**
+     * Applies a config payload from a probe response
+     * A missing payload or an ETag equal to the one held is a no-op.
+     */
+    public synchronized void update(String newEtag, String payload) {
+        if (payload == null || payload.isEmpty() || (newEtag != null && newEtag.equals(etag))) {
+            return;
+        }
+        
+        Values next;
+        try {
+            next = parse(new JSONObject(payload));
+        } catch (Exception e) {
+            Log.e(TAG, "Ignoring malformed config payload: " + e.getMessage());
+            return;
+        }
+        
+        final Set<String> changed = new HashSet<>();
+        Values previous = current;
+        for (int i = 0; i < KEYS.length; i++) {
+            if (previous.values[i] != next.values[i] || previous.overridden[i] != next.overridden[i]) {
+                changed.add(KEYS[i]);
+            }
+        }
+        
+        current = next;
+        etag = newEtag;
+        context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit()
+            .putString("etag", newEtag)
+            .putString("payload", payload)
+            .apply();
+        
+        if (changed.isEmpty()) {
+            return;
+        }
+        Log.d(TAG, "Config " + newEtag + " changed " + changed);
+        
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                List<Listener> snapshot;
+                synchronized (listeners) {
+                    snapshot = new ArrayList<>(listeners);
+                }
+                for (Listener listener : snapshot) {
+                    listener.onConfigChanged(RuntimeConfig.this, changed);
+                }
+            }
+        });
+    }
+    
+    private static Values parse(JSONObject json) {
+        long[] values = DEFAULTS.clone();
+        boolean[] overridden = new boolean[KEYS.length];
+        Iterator<String> names = json.keys();
+        while (names.hasNext()) {
+            String name = names.next();
+            int index = indexOf(name);
+            if (index < 0) {
+                // Keys meant for newer app versions
+                continue;
+            }
+            long value = json.optLong(name, DEFAULTS[index]);
+            values[index] = Math.max(MIN[index], Math.min(MAX[index], value));
+            overridden[index] = true;
+        }
+        return new Values(values, overridden);
+    }
+    
+    private static int indexOf(String key) {
+        for (int i = 0; i < KEYS.length; i++) {
+            if (KEYS[i].equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
\ No newline at end of file
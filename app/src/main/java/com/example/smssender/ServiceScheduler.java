@@ -0,0 +1,106 @@
+package com.example.smssender;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Message;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Dedicated thread for the service's timers
+ *
+ * The probe tick, status batch, delivery timeout and lease checks, the
+ * reply batch timer and the log and reply stats flushes run on one
+ * HandlerThread instead of the main looper, so UI work and receiver
+ * processing no longer hold them up. Every message the handler runs is
+ * timed against the uptime it was scheduled for, and the probe alarm is
+ * timed against its elapsed-realtime deadline, so late ticks and missed
+ * probe deadlines show up in the X-Loop-Lag probe header.
+ */
+public class ServiceScheduler {
+    
+    private static final String TAG = "ServiceScheduler";
+    
+    private static class LagStats {
+        long count = 0;
+        long late = 0;
+        long totalMs = 0;
+        long maxMs = 0;
+        
+        // Returns true if the lag counts as late
+        boolean record(long lagMs) {
+            long lag = Math.max(0, lagMs);
+            count++;
+            totalMs += lag;
+            maxMs = Math.max(maxMs, lag);
+            if (lag > AppConfig.SCHEDULER_LATE_THRESHOLD) {
+                late++;
+                return true;
+            }
+            return false;
+        }
+        
+        long averageMs() {
+            return count > 0 ? totalMs / count : 0;
+        }
+    }
+    
+    private static ServiceScheduler instance;
+    
+    private final Handler handler;
+    private final LagStats ticks = new LagStats();
+    private final LagStats probes = new LagStats();
+    
+    private ServiceScheduler() {
+        HandlerThread thread = new HandlerThread("ServiceScheduler");
+        thread.start();
+        handler = new Handler(thread.getLooper()) {
+            @Override
+            public void dispatchMessage(Message msg) {
+                // getWhen() is the uptime the message was due; anything past it is loop lag
+                recordTick(SystemClock.uptimeMillis() - msg.getWhen());
+                super.dispatchMessage(msg);
+            }
+        };
+    }
+    
+    /**
+     * Process-wide scheduler; the thread lives as long as the process
+     */
+    public static synchronized ServiceScheduler getInstance() {
+        if (instance == null) {
+            instance = new ServiceScheduler();
+        }
+        return instance;
+    }
+    
+    public Handler getHandler() {
+        return handler;
+    }
+    
+    /**
+     * Records how late a probe alarm fired against the deadline it was set for
+     */
+    public synchronized void recordProbeLag(long lagMs) {
+        if (probes.record(lagMs)) {
+            Log.w(TAG, "Probe ran " + lagMs + "ms after its deadline");
+        }
+    }
+    
+    private synchronized void recordTick(long lagMs) {
+        ticks.record(lagMs);
+    }
+    
+    /**
+     * Compact form for the probe header: ticks=..;late=..;avg_ms=..;max_ms=..;probes=..;probes_late=..;probe_max_ms=..
+     */
+    public synchronized String toHeaderValue() {
+        return "ticks=" + ticks.count
+            + ";late=" + ticks.late
+            + ";avg_ms=" + ticks.averageMs()
+            + ";max_ms=" + ticks.maxMs
+            + ";probes=" + probes.count
+            + ";probes_late=" + probes.late
+            + ";probe_max_ms=" + probes.maxMs;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,119 @@
+package com.example.smssender;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Process-wide snapshot of the user settings read on hot paths
+ *
+ * Logging, the device id, our phone number and the saved intervals are
+ * loaded once into an immutable Snapshot. A change to any of the backing
+ * prefs files rebuilds the snapshot and swaps it in, so log calls and SMS
+ * handling read one volatile field instead of opening prefs each time.
+ * Settings are still written through the prefs files as before.
+ */
+public class SettingsRegistry {
+    
+    public interface Listener {
+        void onSettingsChanged(Snapshot previous, Snapshot current);
+    }
+    
+    public static class Snapshot {
+        public final boolean loggingEnabled;
+        public final String ourPhoneNumber;
+        public final String deviceId;
+        public final long probeInterval;    // seconds
+        public final long replyInterval;    // seconds
+        
+        Snapshot(SharedPreferences appSettings, SharedPreferences appConfig, SharedPreferences prober, String deviceId) {
+            this.loggingEnabled = appSettings.getBoolean("logging_enabled", AppConfig.LOGGING_ENABLED_DEFAULT);
+            this.ourPhoneNumber = appConfig.getString("our_phone_number", AppConfig.DEFAULT_PHONE_NUMBER);
+            this.deviceId = deviceId;
+            this.probeInterval = prober.getLong("probe_interval", AppConfig.DEFAULT_PROBE_INTERVAL);
+            this.replyInterval = prober.getLong("reply_interval", AppConfig.DEFAULT_REPLY_INTERVAL);
+        }
+    }
+    
+    private static volatile SettingsRegistry instance;
+    
+    private final SharedPreferences appSettings;
+    private final SharedPreferences appConfig;
+    private final SharedPreferences prober;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private volatile Snapshot snapshot;
+    
+    // Prefs hold change listeners weakly, so keep a strong reference
+    private final SharedPreferences.OnSharedPreferenceChangeListener prefsListener =
+        new SharedPreferences.OnSharedPreferenceChangeListener() {
+            @Override
+            public void onSharedPreferenceChanged(SharedPreferences prefs, String key) {
+                reload();
+            }
+        };
+    
+    private SettingsRegistry(Context context) {
+        Context appContext = context.getApplicationContext();
+        appSettings = appContext.getSharedPreferences("AppSettings", Context.MODE_PRIVATE);
+        appConfig = appContext.getSharedPreferences("AppConfig", Context.MODE_PRIVATE);
+        prober = appContext.getSharedPreferences("sms_prober", Context.MODE_PRIVATE);
+        snapshot = load();
+        appSettings.registerOnSharedPreferenceChangeListener(prefsListener);
+        appConfig.registerOnSharedPreferenceChangeListener(prefsListener);
+        prober.registerOnSharedPreferenceChangeListener(prefsListener);
+    }
+    
+    public static SettingsRegistry getInstance(Context context) {
+        SettingsRegistry registry = instance;
+        if (registry == null) {
+            synchronized (SettingsRegistry.class) {
+                registry = instance;
+                if (registry == null) {
+                    registry = new SettingsRegistry(context);
+                    instance = registry;
+                }
+            }
+        }
+        return registry;
+    }
+    
+    /**
+     * Current settings; never null
+     */
+    public Snapshot get() {
+        return snapshot;
+    }
+    
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+    
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+    
+    private void reload() {
+        Snapshot previous;
+        Snapshot current;
+        synchronized (this) {
+            previous = snapshot;
+            current = load();
+            snapshot = current;
+        }
+        for (Listener listener : listeners) {
+            listener.onSettingsChanged(previous, current);
+        }
+    }
+    
+    private Snapshot load() {
+        String deviceId = appConfig.getString("device_id", null);
+        if (deviceId == null) {
+            // Generate a unique device ID
+            deviceId = "AND_" + System.currentTimeMillis() + "_" + Build.DEVICE;
+            appConfig.edit().putString("device_id", deviceId).apply();
+        }
+        return new Snapshot(appSettings, appConfig, prober, deviceId);
+    }
+}
\ No newline at end of file
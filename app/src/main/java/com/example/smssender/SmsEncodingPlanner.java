@@ -0,0 +1,186 @@
+package com.example.smssender;
+
+import java.text.Normalizer;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * GSM-7 aware encoding planner
+ *
+ * Counts segments for a message under GSM-7 and UCS-2 and, depending on the
+ * task's encoding policy, transliterates characters outside the GSM 03.38
+ * alphabet (Serbian/Macedonian diacritics and Cyrillic, typographic
+ * punctuation) so the message fits in fewer segments.
+ */
+public class SmsEncodingPlanner {
+    
+    // Encoding policies (task "encoding" field)
+    public static final String POLICY_KEEP = "keep";     // send text as-is
+    public static final String POLICY_AUTO = "auto";     // transliterate only if it saves segments
+    public static final String POLICY_GSM7 = "gsm7";     // always transliterate
+    
+    private static final int GSM7_SINGLE_LIMIT = 160;
+    private static final int GSM7_MULTI_LIMIT = 153;
+    private static final int UCS2_SINGLE_LIMIT = 70;
+    private static final int UCS2_MULTI_LIMIT = 67;
+    
+    // GSM 03.38 default alphabet
+    private static final String GSM7_BASIC =
+        "@£$¥èéùìòÇ\nØø\rÅåΔ_ΦΓΛΩΠΨΣΘΞÆæßÉ !\"#¤%&'()*+,-./0123456789:;<=>?" +
+        "¡ABCDEFGHIJKLMNOPQRSTUVWXYZÄÖÑÜ§¿abcdefghijklmnopqrstuvwxyzäöñüà";
+    // Extension table, each costs an escape plus the character
+    private static final String GSM7_EXTENDED = "\f^{}\\[~]|€";
+    
+    private static final BitSet BASIC = new BitSet();
+    private static final BitSet EXTENDED = new BitSet();
+    private static final Map<Character, String> TRANSLITERATIONS = new HashMap<>();
+    
+    static {
+        for (int i = 0; i < GSM7_BASIC.length(); i++) {
+            BASIC.set(GSM7_BASIC.charAt(i));
+        }
+        for (int i = 0; i < GSM7_EXTENDED.length(); i++) {
+            EXTENDED.set(GSM7_EXTENDED.charAt(i));
+        }
+        
+        // Serbian / Croatian / Macedonian Latin
+        map("šŠžŽčČćĆđĐ", new String[] {"s", "S", "z", "Z", "c", "C", "c", "C", "dj", "Dj"});
+        // Serbian and Macedonian Cyrillic (official Latin transliteration without diacritics)
+        map("абвгдђежзијклљмнњопрстћуфхцчџш",
+            new String[] {"a", "b", "v", "g", "d", "dj", "e", "z", "z", "i", "j", "k", "l", "lj", "m",
+                "n", "nj", "o", "p", "r", "s", "t", "c", "u", "f", "h", "c", "c", "dz", "s"});
+        map("АБВГДЂЕЖЗИЈКЛЉМНЊОПРСТЋУФХЦЧЏШ",
+            new String[] {"A", "B", "V", "G", "D", "Dj", "E", "Z", "Z", "I", "J", "K", "L", "Lj", "M",
+                "N", "Nj", "O", "P", "R", "S", "T", "C", "U", "F", "H", "C", "C", "Dz", "S"});
+        map("ѓЃќЌѕЅ", new String[] {"gj", "Gj", "kj", "Kj", "dz", "Dz"});
+        // Typographic punctuation
+        map("‘’‚“”„–—…\u00A0",
+            new String[] {"'", "'", "'", "\"", "\"", "\"", "-", "-", "...", " "});
+    }
+    
+    private static void map(String from, String[] to) {
+        for (int i = 0; i < from.length(); i++) {
+            TRANSLITERATIONS.put(from.charAt(i), to[i]);
+        }
+    }
+    
+    public static class Plan {
+        public final String text;
+        public final boolean gsm7;
+        public final boolean transliterated;
+        public final int originalSegments;
+        public final int segments;
+        
+        Plan(String text, boolean gsm7, boolean transliterated, int originalSegments, int segments) {
+            this.text = text;
+            this.gsm7 = gsm7;
+            this.transliterated = transliterated;
+            this.originalSegments = originalSegments;
+            this.segments = segments;
+        }
+        
+        public int getSegmentsSaved() {
+            return originalSegments - segments;
+        }
+    }
+    
+    /**
+     * Plans the text to send for a message under the given policy
+     */
+    public static Plan plan(String message, String policy) {
+        int originalSegments = countSegments(message);
+        boolean originalGsm7 = gsm7Septets(message) >= 0;
+        
+        if (originalGsm7 || POLICY_KEEP.equals(policy) || policy == null) {
+            return new Plan(message, originalGsm7, false, originalSegments, originalSegments);
+        }
+        
+        String transliterated = transliterate(message);
+        int transliteratedSegments = countSegments(transliterated);
+        boolean transliteratedGsm7 = gsm7Septets(transliterated) >= 0;
+        
+        if (POLICY_GSM7.equals(policy) || transliteratedSegments < originalSegments) {
+            return new Plan(transliterated, transliteratedGsm7, true, originalSegments, transliteratedSegments);
+        }
+        return new Plan(message, false, false, originalSegments, originalSegments);
+    }
+    
+    /**
+     * Plan for text already known to be GSM-7, such as a rendered template, without rescanning it
+     */
+    public static Plan planGsm7(String message, int septets) {
+        int segments = gsm7Segments(septets);
+        return new Plan(message, true, false, segments, segments);
+    }
+    
+    /**
+     * Segments needed for the message, GSM-7 when possible and UCS-2 otherwise
+     */
+    public static int countSegments(String message) {
+        int septets = gsm7Septets(message);
+        if (septets >= 0) {
+            return gsm7Segments(septets);
+        }
+        return ucs2Segments(message);
+    }
+    
+    public static int gsm7Segments(int septets) {
+        return septets <= GSM7_SINGLE_LIMIT ? 1 : (septets + GSM7_MULTI_LIMIT - 1) / GSM7_MULTI_LIMIT;
+    }
+    
+    public static int ucs2Segments(String message) {
+        int units = message.length();
+        return units <= UCS2_SINGLE_LIMIT ? 1 : (units + UCS2_MULTI_LIMIT - 1) / UCS2_MULTI_LIMIT;
+    }
+    
+    /**
+     * Number of GSM-7 septets for the message, or -1 if it needs UCS-2
+     */
+    public static int gsm7Septets(String message) {
+        int septets = 0;
+        for (int i = 0; i < message.length(); i++) {
+            char c = message.charAt(i);
+            if (BASIC.get(c)) {
+                septets++;
+            } else if (EXTENDED.get(c)) {
+                septets += 2;
+            } else {
+                return -1;
+            }
+        }
+        return septets;
+    }
+    
+    /**
+     * Replaces characters outside the GSM-7 alphabet with their closest GSM-7 form
+     * Characters with no mapping are kept, which leaves the message in UCS-2
+     */
+    public static String transliterate(String message) {
+        StringBuilder sb = null;
+        for (int i = 0; i < message.length(); i++) {
+            char c = message.charAt(i);
+            if (BASIC.get(c) || EXTENDED.get(c)) {
+                if (sb != null) {
+                    sb.append(c);
+                }
+                continue;
+            }
+            
+            if (sb == null) {
+                sb = new StringBuilder(message.length() + 8);
+                sb.append(message, 0, i);
+            }
+            
+            String replacement = TRANSLITERATIONS.get(c);
+            if (replacement == null) {
+                // Fall back to the base letter of a decomposed accented character
+                String decomposed = Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFD);
+                char base = decomposed.charAt(0);
+                replacement = BASIC.get(base) ? String.valueOf(base) : String.valueOf(c);
+            }
+            sb.append(replacement);
+        }
+        return sb != null ? sb.toString() : message;
+    }
+}
\ No newline at end of file
@@ -12,27 +12,27 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.SharedPreferences;
+import android.net.Uri;
 import android.os.Build;
 import android.os.Handler;
 import android.os.IBinder;
-import android.os.PowerManager;
 import android.os.SystemClock;
 import android.telephony.SmsManager;
 import androidx.core.app.NotificationCompat;
 import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
-import java.text.SimpleDateFormat;
+import java.net.URLEncoder;
 import java.util.ArrayList;
-import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Locale;
-import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class SmsProbeService extends Service {
     
@@ -40,20 +40,77 @@ public class SmsProbeService extends Service {
     private static final String PROBE_URL = AppConfig.PROBE_ENDPOINT;
     private static final String API_KEY = AppConfig.API_KEY;
     private static final int NOTIFICATION_ID = 1;
+    private static final String ACTION_PROBE_ALARM = "com.example.smssender.PROBE_ALARM";
+    private static final String RESULT_URI_SCHEME = "smssender";
     
-    private Handler handler = new Handler();
+    // Timers run on the scheduler thread so UI work and receivers on the main thread can't delay them
+    private final Handler handler = ServiceScheduler.getInstance().getHandler();
     private Runnable probeRunnable;
-    private boolean isRunning = false;
-    private long probeInterval = 60000; // Default 60 seconds
-    private SimpleDateFormat dateFormat = new SimpleDateFormat("HH:mm:ss", Locale.getDefault());
-    private PowerManager.WakeLock wakeLock;
+    private volatile boolean isRunning = false;
+    private volatile long nextProbeDeadline = 0;    // elapsedRealtime the probe alarm is set for
+    private volatile long probeInterval = 60000; // Default 60 seconds
+    private volatile long userProbeInterval = 60000; // Interval chosen in the UI, used when the server sets none
+    private AppLog log;
+    private WakeLockScheduler wakeLocks;
+    private PendingIntent probeAlarmIntent;
+    private BroadcastReceiver probeAlarmReceiver;
+    private boolean exactAlarmsDenied = false;     // scheduler thread only
     
-    private int sentCounter = 0;
-    private int failedCounter = 0;
-    private int deliveredCounter = 0;
+    private StatisticsPublisher statistics;
     
-    // Track pending SMS for status updates
-    private Map<Integer, PendingSms> pendingSmsMap = new HashMap<>();
+    // Probe fetches and task dispatch run on worker pools sized from AppConfig
+    private ExecutorService probeExecutor;
+    private ExecutorService dispatchExecutor;
+    private int probeWorkers = AppConfig.PROBE_WORKERS;
+    private final AtomicInteger activeProbes = new AtomicInteger();
+    private final AtomicBoolean syncInFlight = new AtomicBoolean();
+    private final AtomicInteger segmentsSavedTotal = new AtomicInteger();
+    
+    // Optional push delivery; polling only runs while the push stream is down
+    private volatile PushTaskClient pushClient;
+    private RuntimeConfig runtimeConfig;
+    private ConnectivityGate connectivityGate;
+    private DeviceHealth health;
+    private RuntimeConfig.Listener configListener;
+    private volatile Runnable statusUpdater;
+    
+    // Pending SMS from parsing until their last status (written by fetch, dispatch workers and receivers)
+    private final DispatchState<PendingSms> dispatchState =
+        new DispatchState<>(AppConfig.PRIORITY_MAX_WAIT, AppConfig.PRIORITY_FAIRNESS_RATIO);
+    private final MultipartTracker multipartTracker = new MultipartTracker();
+    // Result intents carry only a token that resolves back to the in-flight record
+    private final RequestCodeAllocator<PendingSms> resultTokens = new RequestCodeAllocator<>();
+    // In-flight SMS waiting for their sent/delivery reports, expired by one periodic tick
+    private final TimingWheel<PendingSms> deliveryTimeouts = new TimingWheel<>(
+        AppConfig.TIMEOUT_WHEEL_TICK, AppConfig.TIMEOUT_WHEEL_SLOTS, SystemClock.elapsedRealtime());
+    private boolean timeoutTickScheduled = false;
+    // Server task leases and the rolling send quota reported as device capacity
+    private final LeaseTracker leases = new LeaseTracker(AppConfig.SMS_QUOTA_COUNT, AppConfig.SMS_QUOTA_WINDOW);
+    // Sends still waiting for SMS_SENT results; fetching pauses while the radio is backed up
+    private final AdmissionController admission = new AdmissionController(AppConfig.ADMISSION_HIGH_SENDS,
+        AppConfig.ADMISSION_LOW_SENDS, AppConfig.ADMISSION_HIGH_SEGMENTS, AppConfig.ADMISSION_LOW_SEGMENTS);
+    private boolean leaseCheckScheduled = false;
+    private final Runnable leaseCheck = new Runnable() {
+        @Override
+        public void run() {
+            leaseCheckScheduled = false;
+            renewLeases();
+        }
+    };
+    // Probe tick while the CPU is awake, for when the probe alarm can only be inexact
+    private final Runnable probeFallbackTick = new Runnable() {
+        @Override
+        public void run() {
+            onProbeDue();
+        }
+    };
+    private final Runnable timeoutTick = new Runnable() {
+        @Override
+        public void run() {
+            timeoutTickScheduled = false;
+            expireDeliveryTimeouts();
+        }
+    };
     private List<JSONObject> pendingStatusUpdates = new ArrayList<>();
     
     private SmsSentReceiver smsSentReceiver;
@@ -65,13 +122,27 @@ public class SmsProbeService extends Service {
         long shipmentId;
         String phone;
         String message;
-        long sentTimestamp;
+        int lane;
+        String encodingPolicy;
+        String templateId;          // set for template tasks; shipment tracking keeps the params, not the text
+        int templateVersion;
+        JSONObject params;
+        int septets = -1;           // precomputed GSM-7 length of a rendered template
+        int segments;
+        int segmentsSaved;
+        int token = RequestCodeAllocator.NO_TOKEN;
+        List<PendingIntent> resultIntents = new ArrayList<>();
+        TimingWheel.Timeout<PendingSms> timeout;
+        volatile boolean sentConfirmed;
+        volatile long sentTimestamp;
         
-        PendingSms(int queueId, long shipmentId, String phone, String message) {
+        PendingSms(int queueId, long shipmentId, String phone, String message, int lane, String encodingPolicy) {
             this.queueId = queueId;
             this.shipmentId = shipmentId;
             this.phone = phone;
             this.message = message;
+            this.lane = lane;
+            this.encodingPolicy = encodingPolicy;
             this.sentTimestamp = System.currentTimeMillis();
         }
     }
@@ -79,18 +150,82 @@ public class SmsProbeService extends Service {
     @Override
     public void onCreate() {
         super.onCreate();
+        StartupTrace.begin(StartupTrace.SERVICE);
+        log = AppLog.get(this, "SmsProbeService", AppLog.SERVICE_LOG, " - ");
         createNotificationChannel();
         
-        // Acquire wake lock to keep CPU running even when screen is off
-        PowerManager powerManager = (PowerManager) getSystemService(POWER_SERVICE);
-        wakeLock = powerManager.newWakeLock(
-            PowerManager.PARTIAL_WAKE_LOCK | PowerManager.ACQUIRE_CAUSES_WAKEUP,
-            "SmsProbeService::WakeLock"
-        );
-        wakeLock.setReferenceCounted(false);
+        // Coalesce statistics so bursts don't post a notification and broadcast per SMS
+        statistics = new StatisticsPublisher(AppConfig.STATS_PUBLISH_INTERVAL, new StatisticsPublisher.Listener() {
+            @Override
+            public void onStatisticsPublished(StatisticsPublisher.Snapshot snapshot) {
+                NotificationManager manager = (NotificationManager) getSystemService(NOTIFICATION_SERVICE);
+                manager.notify(NOTIFICATION_ID, createNotification(snapshot));
+                broadcastStatistics(snapshot);
+            }
+        });
+        
+        // Wake lock is only held during probe, dispatch and upload bursts;
+        // idle wakeups come from the probe alarm
+        wakeLocks = WakeLockScheduler.getInstance(this);
+        
+        // Server-pushed settings take effect without restarting the service
+        runtimeConfig = RuntimeConfig.getInstance(this);
+        configListener = new RuntimeConfig.Listener() {
+            @Override
+            public void onConfigChanged(final RuntimeConfig config, final Set<String> changedKeys) {
+                // Timers are only ever restarted on the scheduler thread, so a tick running
+                // there can't re-post itself after the removal and leave two loops
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        applyConfigChange(config, changedKeys);
+                    }
+                });
+            }
+        };
+        runtimeConfig.addListener(configListener);
+        
+        // Network loops pause while offline and drain their backlogs in order once a validated network returns
+        connectivityGate = ConnectivityGate.getInstance(this);
+        connectivityGate.start(new ConnectivityGate.Listener() {
+            @Override
+            public void onOffline() {
+                logMessage("Network lost - pausing probe, status and reply uploads");
+            }
+            
+            @Override
+            public void onOnline(long offlineMs) {
+                logMessage("Network back after " + (offlineMs / 1000) + "s - flushing backlog");
+                sendBatchStatusUpdate();
+                ReplyQueueManager.getInstance(SmsProbeService.this).forceSync();
+                if (isRunning && probeRunnable != null) {
+                    handler.post(probeRunnable);
+                }
+            }
+        });
+        
+        // Radio and power state are sampled from change callbacks for the health header
+        health = new DeviceHealth(this);
+        health.start();
+        
+        probeExecutor = Executors.newFixedThreadPool(AppConfig.PROBE_WORKERS);
+        dispatchExecutor = Executors.newFixedThreadPool(AppConfig.DISPATCH_WORKERS);
         
-        // Acquire wake lock with no timeout - will be released in onDestroy
-        wakeLock.acquire();
+        // Persisted indexes are parsed on a worker so onCreate returns quickly;
+        // a thread that needs one before the load finishes waits for it
+        probeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                SuppressionIndex.getInstance(SmsProbeService.this);
+                TaskDedupeWindow.getInstance(SmsProbeService.this);
+                TemplateCache.getInstance(SmsProbeService.this);
+                ReplyStatsAggregator.getInstance(SmsProbeService.this);
+                long elapsed = StartupTrace.mark(StartupTrace.SERVICE, "state_loaded");
+                if (elapsed >= 0) {
+                    logMessage("Startup: service state loaded after " + elapsed + "ms");
+                }
+            }
+        });
         
         // Register SMS broadcast receivers
         registerSmsReceivers();
@@ -100,19 +235,40 @@ public class SmsProbeService extends Service {
         smsSentReceiver = new SmsSentReceiver();
         smsDeliveredReceiver = new SmsDeliveredReceiver();
         
-        registerReceiver(smsSentReceiver, new IntentFilter("SMS_SENT"));
-        registerReceiver(smsDeliveredReceiver, new IntentFilter("SMS_DELIVERED"));
+        // Result intents carry a per-part data URI, so the filters must match the scheme
+        IntentFilter sentFilter = new IntentFilter("SMS_SENT");
+        sentFilter.addDataScheme(RESULT_URI_SCHEME);
+        IntentFilter deliveredFilter = new IntentFilter("SMS_DELIVERED");
+        deliveredFilter.addDataScheme(RESULT_URI_SCHEME);
+        registerReceiver(smsSentReceiver, sentFilter);
+        registerReceiver(smsDeliveredReceiver, deliveredFilter);
+        
+        probeAlarmReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                // Run the tick synchronously: the alarm's own wake lock only lasts for onReceive,
+                // and probeUrl() takes a burst wake lock before returning
+                onProbeDue();
+            }
+        };
+        // Delivered on the scheduler thread, like every other probe tick
+        registerReceiver(probeAlarmReceiver, new IntentFilter(ACTION_PROBE_ALARM), null, handler);
     }
     
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
         if (intent != null && intent.hasExtra("interval")) {
-            probeInterval = intent.getLongExtra("interval", 60000);
+            userProbeInterval = intent.getLongExtra("interval", 60000);
+        }
+        applyProbeInterval();
+        if (intent != null && intent.hasExtra("probe_workers")) {
+            probeWorkers = Math.max(1, Math.min(AppConfig.PROBE_WORKERS,
+                intent.getIntExtra("probe_workers", AppConfig.PROBE_WORKERS)));
         }
         
         if (!isRunning) {
             isRunning = true;
-            startForeground(NOTIFICATION_ID, createNotification());
+            startForeground(NOTIFICATION_ID, createNotification(statistics.getSnapshot()));
             startProbing();
             
             // Start batch status update handler
@@ -127,16 +283,43 @@ public class SmsProbeService extends Service {
             replyManager.updateInterval(replyInterval);
             logMessage("Reply queue manager started with interval: " + replyInterval + "s");
             
+            if (AppConfig.ENABLE_PUSH_MODE) {
+                startPushClient();
+            }
+            
             // Schedule automatic restart to ensure continuous operation
             scheduleServiceRestart();
 
             // Broadcast initial statistics
-            broadcastStatistics();
+            broadcastStatistics(statistics.getSnapshot());
         }
 
         return START_STICKY; // Service will restart if killed
     }
     
+    private void applyConfigChange(RuntimeConfig config, Set<String> changedKeys) {
+        logMessage("Runtime config " + config.getETag() + " changed: " + changedKeys);
+        if (changedKeys.contains(RuntimeConfig.PROBE_INTERVAL)) {
+            applyProbeInterval();
+            if (isRunning) {
+                scheduleNextProbe();
+            }
+        }
+        if (changedKeys.contains(RuntimeConfig.CONNECTION_TIMEOUT) && pushClient != null) {
+            pushClient.setConnectTimeout(config.getInt(RuntimeConfig.CONNECTION_TIMEOUT));
+        }
+        if (changedKeys.contains(RuntimeConfig.STATUS_BATCH_INTERVAL) && isRunning) {
+            handler.removeCallbacks(statusUpdater);
+            startBatchStatusUpdater();
+        }
+    }
+    
+    private void applyProbeInterval() {
+        probeInterval = runtimeConfig.isOverridden(RuntimeConfig.PROBE_INTERVAL)
+            ? runtimeConfig.getLong(RuntimeConfig.PROBE_INTERVAL) * 1000
+            : userProbeInterval;
+    }
+    
     private void scheduleServiceRestart() {
         try {
             AlarmManager alarmManager = (AlarmManager) getSystemService(Context.ALARM_SERVICE);
@@ -188,13 +371,13 @@ public class SmsProbeService extends Service {
         }
     }
     
-    private Notification createNotification() {
+    private Notification createNotification(StatisticsPublisher.Snapshot snapshot) {
         Intent notificationIntent = new Intent(this, MainActivity.class);
         PendingIntent pendingIntent = PendingIntent.getActivity(this, 0, 
             notificationIntent, PendingIntent.FLAG_IMMUTABLE);
         
         String intervalText = "Probing every " + (probeInterval / 1000) + " seconds";
-        String statsText = "Sent: " + sentCounter + " | Delivered: " + deliveredCounter + " | Failed: " + failedCounter;
+        String statsText = "Sent: " + snapshot.sent + " | Delivered: " + snapshot.delivered + " | Failed: " + snapshot.failed;
         
         return new NotificationCompat.Builder(this, CHANNEL_ID)
             .setContentTitle("SMS Sender Active")
@@ -208,206 +391,869 @@ public class SmsProbeService extends Service {
             .build();
     }
     
-    private void updateNotification() {
-        NotificationManager manager = (NotificationManager) getSystemService(NOTIFICATION_SERVICE);
-        manager.notify(NOTIFICATION_ID, createNotification());
-        broadcastStatistics();
-    }
-
-    private void broadcastStatistics() {
+    private void broadcastStatistics(StatisticsPublisher.Snapshot snapshot) {
         Intent intent = new Intent("com.example.smssender.UPDATE_STATISTICS");
-        intent.putExtra("sent_count", sentCounter);
-        intent.putExtra("failed_count", failedCounter);
-        intent.putExtra("delivered_count", deliveredCounter);
+        intent.putExtra("sent_count", snapshot.sent);
+        intent.putExtra("failed_count", snapshot.failed);
+        intent.putExtra("delivered_count", snapshot.delivered);
+        intent.putExtra("dropped_updates", snapshot.droppedUpdates);
         sendBroadcast(intent);
     }
     
     private void startProbing() {
+        Intent alarmIntent = new Intent(ACTION_PROBE_ALARM);
+        alarmIntent.setPackage(getPackageName());
+        probeAlarmIntent = PendingIntent.getBroadcast(this, 1002, alarmIntent,
+            PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+        
         probeRunnable = new Runnable() {
             @Override
             public void run() {
                 if (isRunning) {
-                    // Ensure wake lock is held during probe
-                    if (wakeLock != null && !wakeLock.isHeld()) {
-                        try {
-                            wakeLock.acquire();
-                        } catch (Exception e) {
-                            logMessage("Failed to reacquire wake lock: " + e.getMessage());
-                        }
+                    // Tasks arrive over the push stream while it is connected; nothing to fetch offline
+                    if ((pushClient == null || !pushClient.isConnected()) && connectivityGate.isOnline()) {
+                        probeUrl();
                     }
-                    
-                    probeUrl();
-                    handler.postDelayed(this, probeInterval);
+                    scheduleNextProbe();
                 }
             }
         };
         handler.post(probeRunnable);
     }
     
-    private void probeUrl() {
-        new Thread(new Runnable() {
+    private void onProbeDue() {
+        long deadline = nextProbeDeadline;
+        if (deadline > 0) {
+            ServiceScheduler.getInstance().recordProbeLag(SystemClock.elapsedRealtime() - deadline);
+        }
+        if (isRunning && probeRunnable != null) {
+            probeRunnable.run();
+        }
+    }
+    
+    private void scheduleNextProbe() {
+        // AlarmManager wakes the CPU for the next tick, so nothing has to hold a wake lock while idle
+        AlarmManager alarmManager = (AlarmManager) getSystemService(Context.ALARM_SERVICE);
+        long triggerTime = SystemClock.elapsedRealtime() + probeInterval;
+        nextProbeDeadline = triggerTime;
+        handler.removeCallbacks(probeFallbackTick);
+        
+        // From Android 12 exact alarms need SCHEDULE_EXACT_ALARM, which the user can deny or revoke
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.S || alarmManager.canScheduleExactAlarms()) {
+            try {
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                    alarmManager.setExactAndAllowWhileIdle(AlarmManager.ELAPSED_REALTIME_WAKEUP, triggerTime, probeAlarmIntent);
+                } else {
+                    alarmManager.setExact(AlarmManager.ELAPSED_REALTIME_WAKEUP, triggerTime, probeAlarmIntent);
+                }
+                if (exactAlarmsDenied) {
+                    exactAlarmsDenied = false;
+                    logMessage("Exact alarms allowed again - probing on the exact alarm");
+                }
+                return;
+            } catch (SecurityException e) {
+                // Revoked between the check and the call
+            }
+        }
+        
+        // Degraded mode: the inexact alarm may be batched, so a scheduler tick keeps the interval while awake
+        if (!exactAlarmsDenied) {
+            exactAlarmsDenied = true;
+            logMessage("Exact alarms not permitted - probing on an inexact alarm and a scheduler tick");
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            alarmManager.setAndAllowWhileIdle(AlarmManager.ELAPSED_REALTIME_WAKEUP, triggerTime, probeAlarmIntent);
+        } else {
+            alarmManager.set(AlarmManager.ELAPSED_REALTIME_WAKEUP, triggerTime, probeAlarmIntent);
+        }
+        handler.postDelayed(probeFallbackTick, probeInterval);
+    }
+    
+    private void startPushClient() {
+        pushClient = new PushTaskClient(AppConfig.PUSH_ENDPOINT, new PushTaskClient.Listener() {
             @Override
-            public void run() {
+            public void onConnected() {
+                logMessage("Push stream connected - polling paused");
+            }
+            
+            @Override
+            public void onTask(String taskJson) {
                 try {
-                    URL url = new URL(PROBE_URL);
-                    HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-                    connection.setRequestMethod("GET");
-                    connection.setConnectTimeout(10000);
-                    connection.setReadTimeout(10000);
-                    
-                    // Add API key authentication
-                    connection.setRequestProperty("X-API-Key", API_KEY);
-                    connection.setRequestProperty("Content-Type", "application/json");
-                    
-                    int responseCode = connection.getResponseCode();
-                    logMessage("Probe response: " + responseCode);
-                    
-                    if (responseCode == HttpURLConnection.HTTP_OK) {
-                        BufferedReader reader = new BufferedReader(
-                            new InputStreamReader(connection.getInputStream()));
-                        StringBuilder response = new StringBuilder();
-                        String line;
-                        
-                        while ((line = reader.readLine()) != null) {
-                            response.append(line);
+                    dispatchTask(new JSONObject(taskJson), true);
+                } catch (JSONException e) {
+                    logMessage("JSON Error: " + e.getMessage());
+                }
+                updatePushGate();
+            }
+            
+            @Override
+            public void onDisconnected(String reason) {
+                if (pushClient.isPaused()) {
+                    // Polling is gated the same way, so there is nothing to fall back to
+                    logMessage("Push stream paused - device at capacity");
+                    return;
+                }
+                logMessage("Push stream disconnected (" + reason + ") - falling back to polling");
+                // Probe right away instead of waiting for the next alarm
+                handler.post(probeRunnable);
+            }
+        });
+        pushClient.setConnectTimeout(runtimeConfig.getInt(RuntimeConfig.CONNECTION_TIMEOUT));
+        pushClient.start();
+        logMessage("Push mode enabled: " + AppConfig.PUSH_ENDPOINT);
+    }
+    
+    /**
+     * Holds the push stream closed while admission or device capacity would make the probe skip
+     */
+    private void updatePushGate() {
+        PushTaskClient client = pushClient;
+        if (client == null) {
+            return;
+        }
+        if (!admission.isOpen() || getFreeCapacity() <= 0) {
+            client.pause();
+        } else {
+            client.resume();
+        }
+    }
+    
+    private void probeUrl() {
+        // In sync mode one envelope replaces the fetch, status and reply requests
+        if (AppConfig.ENABLE_SYNC_ENVELOPE) {
+            requestSync();
+            return;
+        }
+        
+        // Sends already handed to the radio have to drain before more work is taken on
+        if (!admission.isOpen()) {
+            logMessage("Admission closed (" + admission.getInFlight() + " sends, "
+                + admission.getUnackedSegments() + " segments unacknowledged) - skipping probe");
+            return;
+        }
+        
+        // A full device leaves its share of the work to the rest of the fleet
+        if (getFreeCapacity() <= 0) {
+            logMessage("Device at capacity (" + dispatchState.size() + " in flight) - skipping probe");
+            return;
+        }
+        
+        // Top up idle probe workers; a worker still waiting on a slow response keeps its slot.
+        // Only the probe tick calls this, so the check-then-increment does not race.
+        while (activeProbes.get() < probeWorkers) {
+            activeProbes.incrementAndGet();
+            final WakeLockScheduler.Burst burst = wakeLocks.begin(WakeLockScheduler.TASK_PROBE);
+            try {
+                probeExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            fetchTask();
+                        } finally {
+                            activeProbes.decrementAndGet();
+                            wakeLocks.end(burst);
                         }
-                        reader.close();
-                        
-                        String result = response.toString();
-                        if (result != null && !result.trim().isEmpty()) {
-                            processSmsRequest(result);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // onDestroy() shut the pool down while this tick was running
+                activeProbes.decrementAndGet();
+                wakeLocks.end(burst);
+                return;
+            }
+        }
+    }
+    
+    private void traceFirstProbe() {
+        long elapsed = StartupTrace.mark(StartupTrace.SERVICE, "first_probe");
+        if (elapsed >= 0) {
+            logMessage("Startup: first probe answered " + elapsed + "ms after service start");
+        }
+    }
+    
+    private void fetchTask() {
+        try {
+            URL url = new URL(PROBE_URL);
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            connection.setRequestMethod("GET");
+            connection.setConnectTimeout(runtimeConfig.getInt(RuntimeConfig.CONNECTION_TIMEOUT));
+            connection.setReadTimeout(runtimeConfig.getInt(RuntimeConfig.READ_TIMEOUT));
+            
+            // Add API key authentication
+            addProbeHeaders(connection);
+            
+            int responseCode = connection.getResponseCode();
+            if (log.isEnabled(AppLog.DEBUG)) {
+                log.debug("Probe response: " + responseCode);
+            }
+            traceFirstProbe();
+            
+            // The server attaches the config payload only when our ETag is stale
+            runtimeConfig.update(connection.getHeaderField("X-Config-ETag"), connection.getHeaderField("X-Config"));
+            syncSuppressionList(connection.getHeaderField("X-Suppression-Version"));
+            
+            if (responseCode == HttpURLConnection.HTTP_OK) {
+                // Tasks stay JSON inside the app whichever encoding the server answered in
+                JSONObject task = WireFormat.readObject(connection, connection.getInputStream());
+                if (task.length() > 0) {
+                    dispatchTask(task, false);
+                }
+            } else if (responseCode == 204) {
+                // No content - no pending SMS
+                // Don't log "no pending" messages to avoid log spam
+            } else if (responseCode == 401) {
+                logMessage("Authentication failed - check API key");
+            }
+        } catch (Exception e) {
+            logMessage("Probe Error: " + e.getMessage());
+        }
+    }
+    
+    private void addProbeHeaders(HttpURLConnection connection) {
+        connection.setRequestProperty("X-API-Key", API_KEY);
+        connection.setRequestProperty("Content-Type", "application/json");
+        WireFormat.addAcceptHeader(connection);
+        connection.setRequestProperty("X-Wake-Stats", wakeLocks.toHeaderValue());
+        connection.setRequestProperty("X-Device-Id", SmsReceiver.getDeviceId(this));
+        connection.setRequestProperty("X-Device-Capacity", getCapacityHeader());
+        connection.setRequestProperty("X-Device-Health", getHealthHeader());
+        connection.setRequestProperty("X-Loop-Lag", ServiceScheduler.getInstance().toHeaderValue());
+        connection.setRequestProperty("X-Admission", admission.toHeaderValue(SystemClock.elapsedRealtime()));
+        connection.setRequestProperty("X-Offline-Stats", connectivityGate.toHeaderValue());
+        connection.setRequestProperty("X-Reply-Stats", ReplyStatsAggregator.getInstance(this).toHeaderValue());
+        String startup = StartupTrace.toHeaderValue();
+        if (!startup.isEmpty()) {
+            connection.setRequestProperty("X-Startup", startup);
+        }
+        if (runtimeConfig.getETag() != null) {
+            connection.setRequestProperty("X-Config-ETag", runtimeConfig.getETag());
+        }
+        if (suppression().getVersion() != null) {
+            connection.setRequestProperty("X-Suppression-Version", suppression().getVersion());
+        }
+    }
+    
+    private SuppressionIndex suppression() {
+        return SuppressionIndex.getInstance(this);
+    }
+    
+    private TaskDedupeWindow dedupe() {
+        return TaskDedupeWindow.getInstance(this);
+    }
+    
+    private TemplateCache templates() {
+        return TemplateCache.getInstance(this);
+    }
+    
+    /**
+     * Fetches a template the cache is missing; null if the server has no usable version
+     */
+    private TemplateCache.Template fetchTemplate(String templateId, int minVersion) {
+        try {
+            URL url = new URL(AppConfig.TEMPLATE_ENDPOINT + "?id=" + URLEncoder.encode(templateId, "UTF-8"));
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            connection.setRequestMethod("GET");
+            connection.setConnectTimeout(runtimeConfig.getInt(RuntimeConfig.CONNECTION_TIMEOUT));
+            connection.setReadTimeout(runtimeConfig.getInt(RuntimeConfig.READ_TIMEOUT));
+            connection.setRequestProperty("X-API-Key", API_KEY);
+            WireFormat.addAcceptHeader(connection);
+            
+            int responseCode = connection.getResponseCode();
+            TemplateCache.Template template = null;
+            if (responseCode == HttpURLConnection.HTTP_OK) {
+                template = templates().put(WireFormat.readObject(connection, connection.getInputStream()));
+                logMessage("Template " + template.id + " v" + template.version + " cached");
+            } else {
+                WireFormat.noteResponse(connection);
+                logMessage("Template fetch failed: " + templateId + " (" + responseCode + ")");
+            }
+            connection.disconnect();
+            return template != null && template.version >= minVersion ? template : null;
+        } catch (Exception e) {
+            logMessage("Template fetch error: " + e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * Fetches the opt-out list delta when the server advertises a newer version
+     */
+    private void syncSuppressionList(String serverVersion) {
+        if (serverVersion == null || serverVersion.equals(suppression().getVersion())) {
+            return;
+        }
+        try {
+            String since = suppression().getVersion();
+            URL url = new URL(AppConfig.SUPPRESSION_ENDPOINT
+                + (since != null ? "?since=" + URLEncoder.encode(since, "UTF-8") : ""));
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            connection.setRequestMethod("GET");
+            connection.setConnectTimeout(runtimeConfig.getInt(RuntimeConfig.CONNECTION_TIMEOUT));
+            connection.setReadTimeout(runtimeConfig.getInt(RuntimeConfig.READ_TIMEOUT));
+            connection.setRequestProperty("X-API-Key", API_KEY);
+            WireFormat.addAcceptHeader(connection);
+            
+            int responseCode = connection.getResponseCode();
+            if (responseCode == HttpURLConnection.HTTP_OK) {
+                int size = suppression().applyServerList(WireFormat.readObject(connection, connection.getInputStream()));
+                logMessage("Suppression list " + suppression().getVersion() + ": " + size + " numbers");
+            } else {
+                WireFormat.noteResponse(connection);
+                logMessage("Suppression sync failed: " + responseCode);
+            }
+            connection.disconnect();
+        } catch (Exception e) {
+            logMessage("Suppression sync error: " + e.getMessage());
+        }
+    }
+    
+    private void requestSync() {
+        // One envelope at a time; updates queued meanwhile ride the next one
+        if (!syncInFlight.compareAndSet(false, true)) {
+            return;
+        }
+        final WakeLockScheduler.Burst burst = wakeLocks.begin(WakeLockScheduler.TASK_PROBE);
+        try {
+            probeExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        syncEnvelope();
+                    } finally {
+                        syncInFlight.set(false);
+                        wakeLocks.end(burst);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Service is shutting down; pending statuses and replies stay queued
+            syncInFlight.set(false);
+            wakeLocks.end(burst);
+        }
+    }
+    
+    /**
+     * Uploads pending statuses and queued replies and fetches new tasks in one round trip
+     */
+    private void syncEnvelope() {
+        List<JSONObject> statuses;
+        synchronized (pendingStatusUpdates) {
+            statuses = new ArrayList<>(pendingStatusUpdates);
+            pendingStatusUpdates.clear();
+        }
+        ReplyQueueManager replyManager = ReplyQueueManager.getInstance(this);
+        List<JSONObject> replies = replyManager.takeSyncBatch();
+        boolean delivered = false;
+        
+        try {
+            JSONObject envelope = new JSONObject();
+            envelope.put("device_id", SmsReceiver.getDeviceId(this));
+            JSONArray statusArray = new JSONArray();
+            for (JSONObject status : statuses) {
+                statusArray.put(status);
+            }
+            envelope.put("statuses", statusArray);
+            JSONArray replyArray = new JSONArray();
+            for (JSONObject reply : replies) {
+                replyArray.put(reply);
+            }
+            envelope.put("replies", replyArray);
+            JSONObject fetch = new JSONObject();
+            fetch.put("max_tasks", getFreeCapacity());
+            envelope.put("fetch", fetch);
+            
+            URL url = new URL(AppConfig.SYNC_ENDPOINT);
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setConnectTimeout(runtimeConfig.getInt(RuntimeConfig.CONNECTION_TIMEOUT));
+            connection.setReadTimeout(runtimeConfig.getInt(RuntimeConfig.READ_TIMEOUT));
+            addProbeHeaders(connection);
+            
+            WireFormat.writeBody(connection, envelope);
+            
+            int responseCode = connection.getResponseCode();
+            traceFirstProbe();
+            runtimeConfig.update(connection.getHeaderField("X-Config-ETag"), connection.getHeaderField("X-Config"));
+            syncSuppressionList(connection.getHeaderField("X-Suppression-Version"));
+            
+            if (responseCode == HttpURLConnection.HTTP_OK) {
+                // The server has taken the statuses and replies even if its answer fails to parse
+                delivered = true;
+                
+                JSONObject result = WireFormat.readObject(connection, connection.getInputStream());
+                JSONArray tasks = result.optJSONArray("tasks");
+                int taskCount = tasks != null ? tasks.length() : 0;
+                if (!statuses.isEmpty() || !replies.isEmpty() || taskCount > 0) {
+                    logMessage("Sync: " + statuses.size() + " statuses, " + replies.size() + " replies up, "
+                        + taskCount + " tasks down");
+                }
+                for (int i = 0; i < taskCount; i++) {
+                    dispatchTask(tasks.getJSONObject(i), false);
+                }
+            } else if (responseCode == 401) {
+                logMessage("Authentication failed - check API key");
+            } else {
+                WireFormat.noteResponse(connection);
+                logMessage("Sync failed: " + responseCode);
+            }
+            connection.disconnect();
+        } catch (Exception e) {
+            logMessage("Sync error: " + e.getMessage());
+        } finally {
+            if (!delivered) {
+                synchronized (pendingStatusUpdates) {
+                    pendingStatusUpdates.addAll(0, statuses);
+                }
+            }
+            replyManager.completeSyncBatch(replies, delivered);
+        }
+    }
+    
+    private void dispatchTask(JSONObject task, final boolean pushed) {
+        // Parse and enqueue on the caller's thread so queued tasks can be reordered by lane,
+        // then hand the send to a dispatch worker which takes the highest-priority task
+        processSmsRequest(task);
+        
+        final WakeLockScheduler.Burst burst = wakeLocks.begin(WakeLockScheduler.TASK_DISPATCH);
+        try {
+            dispatchExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        sendNextQueuedSms();
+                        if (pushed) {
+                            // Acknowledge pushed tasks right away rather than on the 10s status timer
+                            sendBatchStatusUpdate();
                         }
-                    } else if (responseCode == 204) {
-                        // No content - no pending SMS
-                        // Don't log "no pending" messages to avoid log spam
-                    } else if (responseCode == 401) {
-                        logMessage("Authentication failed - check API key");
+                    } finally {
+                        wakeLocks.end(burst);
                     }
-                } catch (Exception e) {
-                    logMessage("Probe Error: " + e.getMessage());
                 }
+            });
+        } catch (RejectedExecutionException e) {
+            // Service is shutting down; the task this poll was for will never be sent
+            wakeLocks.end(burst);
+            PendingSms sms = dispatchState.next();
+            if (sms != null) {
+                logMessage("Dispatch rejected, not sending: Queue " + sms.queueId);
+                reportStatus(sms.queueId, sms.phone, "failed", sms.shipmentId, "DISPATCH_REJECTED", null, null, null, sms.message);
+                finishSms(sms.queueId);
             }
-        }).start();
+        }
     }
     
-    private void processSmsRequest(String jsonResponse) {
+    private void processSmsRequest(JSONObject json) {
         try {
-            JSONObject json = new JSONObject(jsonResponse);
             String originalPhone = json.getString("phone");
             
             // Log original phone number
-            logMessage("Original phone from server: " + originalPhone);
+            if (log.isEnabled(AppLog.DEBUG)) {
+                log.debug("Original phone from server: " + originalPhone);
+            }
             
-            // Clean phone number - just remove spaces and dashes, keep as is
-            String phone = originalPhone.trim();
-            phone = phone.replaceAll("[\\s-]", "");
+            // Clean phone number - strip separators, keep the server's format unless dialing locally
+            PhoneNumberNormalizer.Number number = PhoneNumberNormalizer.getDefault().normalize(originalPhone);
+            String phone = AppConfig.DIAL_LOCAL_FORM ? number.local : number.cleaned;
             
-            logMessage("Cleaned phone for sending: " + phone);
+            if (log.isEnabled(AppLog.DEBUG)) {
+                log.debug("Cleaned phone for sending: " + phone);
+            }
             
-            String message = json.getString("message");
+            // Template tasks carry template_id and params instead of the rendered message
+            String templateId = json.optString("template_id", "");
+            String message = templateId.isEmpty() ? json.getString("message") : null;
             int queueId = json.getInt("queue_id");
             long shipmentId = json.getLong("shipment_id");
+            int lane = DispatchQueue.laneFor(json.optString("priority", ""));
+            String encodingPolicy = json.optString("encoding", AppConfig.DEFAULT_ENCODING_POLICY);
             
-            logMessage("SMS Task - Queue: " + queueId + ", Phone: " + phone + ", Length: " + phone.length());
+            if (log.isEnabled(AppLog.INFO)) {
+                logMessage("SMS Task - Queue: " + queueId + ", Phone: " + phone + ", Length: " + phone.length() + ", Lane: " + lane);
+            }
+            
+            // A task seen before is answered with its last status instead of being sent again
+            String knownStatus = dedupe().admit(queueId, dispatchState.isHeld(queueId));
+            if (knownStatus != null) {
+                logMessage("Duplicate task, re-reporting " + knownStatus + ": Queue " + queueId);
+                reportStatus(queueId, phone, knownStatus, shipmentId, "DUPLICATE", null, null, null, message);
+                return;
+            }
+            
+            TemplateCache.Rendered rendered = null;
+            int templateVersion = json.optInt("template_version", 0);
+            if (message == null) {
+                TemplateCache.Template template = templates().get(templateId, templateVersion);
+                if (template == null) {
+                    template = fetchTemplate(templateId, templateVersion);
+                }
+                if (template == null) {
+                    reportStatus(queueId, phone, "failed", shipmentId, "TEMPLATE_UNAVAILABLE", null, null, null, null);
+                    return;
+                }
+                rendered = template.render(json.optJSONObject("params"));
+                if (rendered == null) {
+                    logMessage("Template " + templateId + " params missing: Queue " + queueId);
+                    reportStatus(queueId, phone, "failed", shipmentId, "TEMPLATE_PARAMS_MISSING", null, null, null, null);
+                    return;
+                }
+                message = rendered.text;
+                templateVersion = template.version;
+            }
             
             // Store SMS details for tracking
-            PendingSms pendingSms = new PendingSms(queueId, shipmentId, phone, message);
-            pendingSmsMap.put(queueId, pendingSms);
+            PendingSms pendingSms = new PendingSms(queueId, shipmentId, phone, message, lane, encodingPolicy);
+            if (rendered != null) {
+                pendingSms.templateId = templateId;
+                pendingSms.templateVersion = templateVersion;
+                pendingSms.params = json.optJSONObject("params");
+                pendingSms.septets = rendered.septets;
+            }
+            dispatchState.hold(queueId, pendingSms);
+            leases.track(queueId, json, System.currentTimeMillis());
+            if (leases.hasLeases()) {
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        scheduleLeaseCheck();
+                    }
+                });
+            }
             
             // Report status: processing
             reportStatus(queueId, phone, "processing", shipmentId, "", null, null, null, message);
             
-            // Send SMS with tracking
-            sendSmsWithTracking(queueId, phone, message, shipmentId);
-            
-            // Track shipment for reply correlation with original message
-            trackShipmentForReplies(phone, shipmentId, queueId, message);
+            dispatchState.enqueue(pendingSms, lane);
             
         } catch (Exception e) {
             logMessage("JSON Error: " + e.getMessage());
         }
     }
     
-    private void sendSmsWithTracking(int queueId, String phone, String message, long shipmentId) {
+    private void sendNextQueuedSms() {
+        // One poll per enqueued task; a failed parse leaves an extra poll that finds nothing
+        PendingSms sms = dispatchState.next();
+        if (sms == null) {
+            return;
+        }
+        
+        // The server may already have handed an expired task to another device
+        if (leases.isExpired(sms.queueId, System.currentTimeMillis())) {
+            logMessage("Lease expired before sending: Queue " + sms.queueId);
+            reportStatus(sms.queueId, sms.phone, "lease_expired", sms.shipmentId, "", null, null, null, sms.message);
+            finishSms(sms.queueId);
+            return;
+        }
+        
+        // Recipients who opted out are never messaged again; the server hears about it right away
+        if (suppression().isSuppressed(sms.phone)) {
+            logMessage("Recipient opted out, not sending: Queue " + sms.queueId);
+            reportStatus(sms.queueId, sms.phone, "suppressed", sms.shipmentId, "OPTED_OUT", null, null, null, sms.message);
+            finishSms(sms.queueId);
+            return;
+        }
+        
+        // Pick the encoding that needs the fewest segments under the task's policy
+        // (rendered GSM-7 templates already know their length)
+        SmsEncodingPlanner.Plan plan = sms.septets >= 0
+            ? SmsEncodingPlanner.planGsm7(sms.message, sms.septets)
+            : SmsEncodingPlanner.plan(sms.message, sms.encodingPolicy);
+        sms.message = plan.text;
+        sms.segments = plan.segments;
+        sms.segmentsSaved = plan.getSegmentsSaved();
+        if (plan.transliterated) {
+            segmentsSavedTotal.addAndGet(sms.segmentsSaved);
+            if (log.isEnabled(AppLog.INFO)) {
+                logMessage("Transliterated to " + (plan.gsm7 ? "GSM-7" : "UCS-2") + ": Queue " + sms.queueId
+                    + ", segments " + plan.originalSegments + " -> " + plan.segments);
+            }
+        }
+        
+        // Send SMS with tracking
+        sendSmsWithTracking(sms);
+        
+        // Track shipment for reply correlation with original message
+        trackShipmentForReplies(sms);
+    }
+    
+    private void sendSmsWithTracking(PendingSms sms) {
+        int queueId = sms.queueId;
+        String phone = sms.phone;
+        String message = sms.message;
+        long shipmentId = sms.shipmentId;
         try {
             // Report status: pending (starting to send)
             reportStatus(queueId, phone, "pending", shipmentId, "", null, null, null, message);
             
             SmsManager smsManager = SmsManager.getDefault();
             
-            // Create pending intents for SMS tracking
-            Intent sentIntent = new Intent("SMS_SENT");
-            sentIntent.putExtra("queue_id", queueId);
-            sentIntent.putExtra("phone", phone);
-            sentIntent.putExtra("shipment_id", shipmentId);
-            sentIntent.putExtra("message", message);
-            
-            Intent deliveryIntent = new Intent("SMS_DELIVERED");
-            deliveryIntent.putExtra("queue_id", queueId);
-            deliveryIntent.putExtra("phone", phone);
-            deliveryIntent.putExtra("shipment_id", shipmentId);
-            deliveryIntent.putExtra("message", message);
-            
-            PendingIntent sentPI = PendingIntent.getBroadcast(this, queueId, sentIntent, 
-                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
-            PendingIntent deliveredPI = PendingIntent.getBroadcast(this, queueId + 10000, deliveryIntent, 
-                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
-            
             // Log before sending
-            logMessage("Attempting to send SMS to: '" + phone + "' (length: " + phone.length() + ")");
-            logMessage("Message length: " + message.length() + " chars");
+            if (log.isEnabled(AppLog.INFO)) {
+                logMessage("Attempting to send SMS to: '" + phone + "' (length: " + phone.length() + ")");
+                logMessage("Message length: " + message.length() + " chars");
+            }
             
             try {
                 // Check if message needs to be split (SMS limit is 160 chars for ASCII, 70 for Unicode)
                 ArrayList<String> parts = smsManager.divideMessage(message);
-                if (parts.size() > 1) {
-                    // For multipart messages, create PendingIntents for each part
-                    ArrayList<PendingIntent> sentIntents = new ArrayList<>();
-                    ArrayList<PendingIntent> deliveryIntents = new ArrayList<>();
-                    
-                    // Only add PendingIntent for the last part to avoid duplicate status updates
-                    for (int i = 0; i < parts.size(); i++) {
-                        if (i == parts.size() - 1) {
-                            // Last part - add actual intents
-                            sentIntents.add(sentPI);
-                            deliveryIntents.add(deliveredPI);
-                        } else {
-                            // Other parts - add null to skip status updates
-                            sentIntents.add(null);
-                            deliveryIntents.add(null);
-                        }
+                int partCount = parts.size();
+                
+                sms.token = resultTokens.allocate(sms);
+                if (sms.token == RequestCodeAllocator.NO_TOKEN) {
+                    throw new IllegalStateException("No free result token (" + RequestCodeAllocator.CAPACITY + " SMS in flight)");
+                }
+                multipartTracker.begin(queueId, partCount);
+                // Counted before the send so a fast SMS_SENT result always finds the message
+                admission.onSend(queueId, partCount, SystemClock.elapsedRealtime());
+                updatePushGate();
+                
+                // Every part gets its own sent and delivery intent; results are merged by the tracker
+                ArrayList<PendingIntent> sentIntents = new ArrayList<>();
+                ArrayList<PendingIntent> deliveryIntents = new ArrayList<>();
+                for (int i = 0; i < partCount; i++) {
+                    sentIntents.add(createResultIntent("SMS_SENT", sms, i));
+                    deliveryIntents.add(createResultIntent("SMS_DELIVERED", sms, i));
+                }
+                
+                if (partCount > 1) {
+                    if (log.isEnabled(AppLog.INFO)) {
+                        logMessage("Sending multipart SMS (" + partCount + " parts) to: " + phone);
                     }
-                    
-                    logMessage("Sending multipart SMS (" + parts.size() + " parts) to: " + phone);
                     smsManager.sendMultipartTextMessage(phone, null, parts, sentIntents, deliveryIntents);
                 } else {
                     // Send single SMS
-                    smsManager.sendTextMessage(phone, null, message, sentPI, deliveredPI);
+                    smsManager.sendTextMessage(phone, null, message, sentIntents.get(0), deliveryIntents.get(0));
+                }
+                
+                if (log.isEnabled(AppLog.INFO)) {
+                    logMessage("SMS send command executed for: " + phone);
                 }
+                leases.recordSend(System.currentTimeMillis());
                 
-                logMessage("SMS send command executed for: " + phone);
+                // Also covers a missing sent report; re-armed once the message is sent
+                armDeliveryTimeout(sms);
             } catch (Exception e) {
                 logMessage("SMS sending exception: " + e.getMessage() + " for phone: " + phone);
-                failedCounter++;
-                updateNotification();
+                statistics.recordFailed();
+                health.recordSend(true);
                 reportStatus(queueId, phone, "failed", shipmentId, "EXCEPTION: " + e.getMessage(), null, null, null, message);
-                pendingSmsMap.remove(queueId);
+                finishSms(queueId);
             }
             
         } catch (Exception e) {
             logMessage("SMS Send Error: " + e.getMessage());
-            failedCounter++;
-            updateNotification();
+            statistics.recordFailed();
+            health.recordSend(true);
             
             // Report failure
             long timestamp = System.currentTimeMillis();
             reportStatus(queueId, phone, "failed", shipmentId, e.getMessage(), timestamp, null, null, message);
+            finishSms(queueId);
         }
     }
     
+    private PendingIntent createResultIntent(String action, PendingSms sms, int partIndex) {
+        Intent intent = new Intent(action);
+        // PendingIntents ignore extras when matching, so the data URI keeps each part distinct
+        intent.setData(Uri.parse(RESULT_URI_SCHEME + "://r/" + sms.token + "/" + partIndex));
+        intent.putExtra("token", sms.token);
+        intent.putExtra("part_index", partIndex);
+        
+        // Tokens are unique among in-flight SMS, so the current intent never overwrites another message's
+        PendingIntent pendingIntent = PendingIntent.getBroadcast(this, sms.token, intent,
+            PendingIntent.FLAG_ONE_SHOT | PendingIntent.FLAG_IMMUTABLE);
+        sms.resultIntents.add(pendingIntent);
+        return pendingIntent;
+    }
+    
+    private void armDeliveryTimeout(final PendingSms sms) {
+        // A fast sent report can re-arm while the dispatch worker is still arming
+        synchronized (sms) {
+            deliveryTimeouts.cancel(sms.timeout);
+            sms.timeout = deliveryTimeouts.schedule(sms, runtimeConfig.getLong(RuntimeConfig.SMS_DELIVERY_TIMEOUT) * 1000,
+                SystemClock.elapsedRealtime());
+        }
+        
+        // Receivers and dispatch workers run off the scheduler thread that owns the wheel tick
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                scheduleTimeoutTick();
+            }
+        });
+    }
+    
+    private void scheduleTimeoutTick() {
+        if (!timeoutTickScheduled && deliveryTimeouts.size() > 0) {
+            timeoutTickScheduled = true;
+            handler.postDelayed(timeoutTick, AppConfig.TIMEOUT_WHEEL_TICK);
+        }
+    }
+    
+    private void expireDeliveryTimeouts() {
+        for (PendingSms sms : deliveryTimeouts.advance(SystemClock.elapsedRealtime())) {
+            if (dispatchState.get(sms.queueId) != sms) {
+                continue;
+            }
+            
+            if (sms.sentConfirmed) {
+                logMessage("SMS delivery report timed out: Queue " + sms.queueId);
+                reportStatus(sms.queueId, sms.phone, "sent_unconfirmed", sms.shipmentId, "",
+                    sms.sentTimestamp, null, null, sms.message);
+            } else {
+                logMessage("SMS sent report timed out: Queue " + sms.queueId);
+                reportStatus(sms.queueId, sms.phone, "sent_unconfirmed", sms.shipmentId, "NO_SENT_REPORT",
+                    null, null, null, sms.message);
+            }
+            finishSms(sms.queueId);
+        }
+        scheduleTimeoutTick();
+    }
+    
+    private void finishSms(int queueId) {
+        PendingSms sms = dispatchState.finish(queueId);
+        multipartTracker.remove(queueId);
+        leases.release(queueId);
+        if (admission.release(queueId, SystemClock.elapsedRealtime())) {
+            resumeFetching();
+        }
+        updatePushGate();
+        if (sms != null) {
+            synchronized (sms) {
+                deliveryTimeouts.cancel(sms.timeout);
+            }
+        }
+        if (sms != null && sms.token != RequestCodeAllocator.NO_TOKEN) {
+            // Cancel outstanding part intents before the token is recycled
+            for (PendingIntent pendingIntent : sms.resultIntents) {
+                pendingIntent.cancel();
+            }
+            sms.resultIntents.clear();
+            resultTokens.release(sms.token);
+        }
+    }
+    
+    private void failQueuedTasks() {
+        int failed = 0;
+        PendingSms sms;
+        while ((sms = dispatchState.next()) != null) {
+            reportStatus(sms.queueId, sms.phone, "failed", sms.shipmentId, "SERVICE_STOPPED", null, null, null, sms.message);
+            finishSms(sms.queueId);
+            failed++;
+        }
+        if (failed > 0) {
+            logMessage("Service stopping - " + failed + " queued tasks reported failed");
+        }
+    }
+    
+    private void resumeFetching() {
+        logMessage("Admission reopened - resuming probes");
+        updatePushGate();
+        // Finishing can happen on a dispatch worker; the probe tick belongs to the handler
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (isRunning && probeRunnable != null) {
+                    probeRunnable.run();
+                }
+            }
+        });
+    }
+    
+    private int getFreeCapacity() {
+        return freeCapacity(dispatchState.size(), admission.getFreeSlots());
+    }
+    
+    /**
+     * Tasks the device can take on; the send quota is only reported, never enforced here
+     */
+    static int freeCapacity(int pending, int admissionSlots) {
+        return Math.max(0, Math.min(AppConfig.DEVICE_MAX_IN_FLIGHT - pending, admissionSlots));
+    }
+    
+    private String getHealthHeader() {
+        int statusBacklog;
+        synchronized (pendingStatusUpdates) {
+            statusBacklog = pendingStatusUpdates.size();
+        }
+        return health.toHeaderValue(ReplyQueueManager.getInstance(this).getQueueSize(), statusBacklog,
+            admission.getInFlight());
+    }
+    
+    private String getCapacityHeader() {
+        int queued = dispatchState.queued();
+        return "free=" + getFreeCapacity()
+            + ";in_flight=" + (dispatchState.size() - queued)
+            + ";queued=" + queued
+            + ";quota=" + leases.getFreeQuota(System.currentTimeMillis());
+    }
+    
+    private void scheduleLeaseCheck() {
+        if (!leaseCheckScheduled && isRunning && leases.hasLeases()) {
+            leaseCheckScheduled = true;
+            handler.postDelayed(leaseCheck, AppConfig.LEASE_CHECK_INTERVAL);
+        }
+    }
+    
+    private void renewLeases() {
+        final JSONArray due = leases.getDueForRenewal(System.currentTimeMillis(), AppConfig.LEASE_RENEW_MARGIN);
+        if (due.length() == 0 || !connectivityGate.isOnline()) {
+            scheduleLeaseCheck();
+            return;
+        }
+        
+        final WakeLockScheduler.Burst burst = wakeLocks.begin(WakeLockScheduler.TASK_STATUS_UPLOAD);
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    JSONObject body = new JSONObject();
+                    body.put("action", "renew_leases");
+                    body.put("device_id", SmsReceiver.getDeviceId(SmsProbeService.this));
+                    body.put("leases", due);
+                    
+                    URL url = new URL(PROBE_URL);
+                    HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+                    connection.setRequestMethod("POST");
+                    connection.setRequestProperty("X-API-Key", API_KEY);
+                    WireFormat.addAcceptHeader(connection);
+                    connection.setRequestProperty("X-Device-Capacity", getCapacityHeader());
+                    connection.setDoOutput(true);
+                    connection.setConnectTimeout(runtimeConfig.getInt(RuntimeConfig.CONNECTION_TIMEOUT));
+                    connection.setReadTimeout(runtimeConfig.getInt(RuntimeConfig.READ_TIMEOUT));
+                    
+                    WireFormat.writeBody(connection, body);
+                    
+                    int responseCode = connection.getResponseCode();
+                    if (responseCode == HttpURLConnection.HTTP_OK) {
+                        int extended = leases.applyRenewals(WireFormat.readObject(connection, connection.getInputStream()));
+                        logMessage("Leases renewed: " + extended + "/" + due.length());
+                    } else {
+                        WireFormat.noteResponse(connection);
+                        logMessage("Lease renewal failed: " + responseCode);
+                    }
+                    connection.disconnect();
+                } catch (Exception e) {
+                    logMessage("Lease renewal error: " + e.getMessage());
+                } finally {
+                    wakeLocks.end(burst);
+                    handler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            scheduleLeaseCheck();
+                        }
+                    });
+                }
+            }
+        }).start();
+    }
+    
     private void reportStatus(int queueId, String phone, String status, long shipmentId, 
                              String errorCode, Long sentTimestamp, Long deliveredTimestamp, 
                              Integer deliveryTimeSeconds, String smsSent) {
+        if (!"DUPLICATE".equals(errorCode)) {
+            dedupe().update(queueId, status);
+        }
         try {
             JSONObject statusUpdate = new JSONObject();
             statusUpdate.put("queue_id", queueId);
@@ -434,13 +1280,31 @@ public class SmsProbeService extends Service {
                 statusUpdate.put("delivery_time_seconds", deliveryTimeSeconds);
             }
             
+            PendingSms sms = dispatchState.get(queueId);
+            if (sms != null && sms.segments > 0) {
+                statusUpdate.put("segments", sms.segments);
+                if (sms.segmentsSaved > 0) {
+                    statusUpdate.put("segments_saved", sms.segmentsSaved);
+                }
+            }
+            
+            // Per-segment latency shows carrier-side fragmentation delays on multipart messages
+            if (multipartTracker.getPartCount(queueId) > 1) {
+                if (status.equals("sent") || status.equals("failed")) {
+                    statusUpdate.put("segment_sent_ms", multipartTracker.getSentLatencies(queueId));
+                } else if (status.equals("delivered") || status.equals("sent_unconfirmed")) {
+                    statusUpdate.put("segment_sent_ms", multipartTracker.getSentLatencies(queueId));
+                    statusUpdate.put("segment_delivered_ms", multipartTracker.getDeliveryLatencies(queueId));
+                }
+            }
+            
             // Add to pending updates for batch processing
             synchronized (pendingStatusUpdates) {
                 pendingStatusUpdates.add(statusUpdate);
             }
             
             // Send immediately if critical status
-            if (status.equals("delivered") || status.equals("failed")) {
+            if (status.equals("delivered") || status.equals("failed") || status.equals("suppressed")) {
                 sendBatchStatusUpdate();
             }
             
@@ -450,76 +1314,83 @@ public class SmsProbeService extends Service {
     }
     
     private void startBatchStatusUpdater() {
-        // Send batch updates every 10 seconds
-        handler.postDelayed(new Runnable() {
-            @Override
-            public void run() {
-                if (isRunning) {
-                    sendBatchStatusUpdate();
-                    handler.postDelayed(this, 10000); // Every 10 seconds
+        // Send batch updates every STATUS_BATCH_INTERVAL (10 seconds unless the server overrides it)
+        if (statusUpdater == null) {
+            statusUpdater = new Runnable() {
+                @Override
+                public void run() {
+                    if (isRunning) {
+                        sendBatchStatusUpdate();
+                        handler.postDelayed(this, runtimeConfig.getLong(RuntimeConfig.STATUS_BATCH_INTERVAL));
+                    }
                 }
-            }
-        }, 10000);
+            };
+        }
+        handler.postDelayed(statusUpdater, runtimeConfig.getLong(RuntimeConfig.STATUS_BATCH_INTERVAL));
     }
     
     private void sendBatchStatusUpdate() {
         synchronized (pendingStatusUpdates) {
-            if (pendingStatusUpdates.isEmpty()) {
+            // Offline updates stay pending until the connectivity gate flushes them
+            if (pendingStatusUpdates.isEmpty() || !connectivityGate.isOnline()) {
+                return;
+            }
+            if (AppConfig.ENABLE_SYNC_ENVELOPE) {
+                requestSync();
                 return;
             }
             
             final List<JSONObject> updates = new ArrayList<>(pendingStatusUpdates);
             pendingStatusUpdates.clear();
             
+            final WakeLockScheduler.Burst burst = wakeLocks.begin(WakeLockScheduler.TASK_STATUS_UPLOAD);
             new Thread(new Runnable() {
                 @Override
                 public void run() {
                     try {
                         // Send as array if multiple, single object if one
-                        String jsonBody;
+                        Object body;
                         if (updates.size() == 1) {
-                            jsonBody = updates.get(0).toString();
+                            body = updates.get(0);
                         } else {
                             JSONArray array = new JSONArray();
                             for (JSONObject update : updates) {
                                 array.put(update);
                             }
-                            jsonBody = array.toString();
+                            body = array;
                         }
                         
                         logMessage("Sending status update to: " + PROBE_URL);
-                        logMessage("Status update data: " + jsonBody.substring(0, Math.min(jsonBody.length(), 200)));
+                        if (log.isEnabled(AppLog.DEBUG)) {
+                            String jsonBody = body.toString();
+                            log.debug("Status update data: " + jsonBody.substring(0, Math.min(jsonBody.length(), 200)));
+                        }
                         
                         URL url = new URL(PROBE_URL);
                         HttpURLConnection connection = (HttpURLConnection) url.openConnection();
                         connection.setRequestMethod("POST");
                         connection.setRequestProperty("X-API-Key", API_KEY);
-                        connection.setRequestProperty("Content-Type", "application/json");
+                        WireFormat.addAcceptHeader(connection);
                         connection.setDoOutput(true);
                         connection.setDoInput(true);
+                        connection.setConnectTimeout(runtimeConfig.getInt(RuntimeConfig.CONNECTION_TIMEOUT));
+                        connection.setReadTimeout(runtimeConfig.getInt(RuntimeConfig.READ_TIMEOUT));
                         
-                        OutputStream os = connection.getOutputStream();
-                        os.write(jsonBody.getBytes("UTF-8"));
-                        os.flush();
-                        os.close();
+                        // JSON until the server has answered in the compact encoding
+                        WireFormat.writeBody(connection, body);
                         
                         int responseCode = connection.getResponseCode();
                         
                         // Read response
-                        BufferedReader reader = new BufferedReader(new InputStreamReader(
-                            responseCode == HttpURLConnection.HTTP_OK ? connection.getInputStream() : connection.getErrorStream()
-                        ));
-                        StringBuilder response = new StringBuilder();
-                        String line;
-                        while ((line = reader.readLine()) != null) {
-                            response.append(line);
-                        }
-                        reader.close();
+                        String response = WireFormat.readBody(connection,
+                            responseCode == HttpURLConnection.HTTP_OK ? connection.getInputStream() : connection.getErrorStream());
                         
                         if (responseCode == HttpURLConnection.HTTP_OK) {
-                            logMessage("Status batch sent: " + updates.size() + " updates. Response: " + response.toString());
+                            if (log.isEnabled(AppLog.INFO)) {
+                                logMessage("Status batch sent: " + updates.size() + " updates. Response: " + response);
+                            }
                         } else {
-                            logMessage("Status update failed: " + responseCode + ". Error: " + response.toString());
+                            logMessage("Status update failed: " + responseCode + ". Error: " + response);
                             // Re-add to pending for retry
                             synchronized (pendingStatusUpdates) {
                                 pendingStatusUpdates.addAll(updates);
@@ -532,6 +1403,8 @@ public class SmsProbeService extends Service {
                         synchronized (pendingStatusUpdates) {
                             pendingStatusUpdates.addAll(updates);
                         }
+                    } finally {
+                        wakeLocks.end(burst);
                     }
                 }
             }).start();
@@ -542,65 +1415,80 @@ public class SmsProbeService extends Service {
     private class SmsSentReceiver extends BroadcastReceiver {
         @Override
         public void onReceive(Context context, Intent intent) {
-            int queueId = intent.getIntExtra("queue_id", 0);
-            String phone = intent.getStringExtra("phone");
-            long shipmentId = intent.getLongExtra("shipment_id", 0);
-            String message = intent.getStringExtra("message");
+            int resultCode = getResultCode();
+            PendingSms sms = resultTokens.resolve(intent.getIntExtra("token", RequestCodeAllocator.NO_TOKEN));
+            if (sms == null) {
+                logMessage("Ignoring SMS sent result for a finished message (code " + resultCode + ")");
+                return;
+            }
+            
+            int queueId = sms.queueId;
+            String phone = sms.phone;
+            long shipmentId = sms.shipmentId;
+            String message = sms.message;
+            int partIndex = intent.getIntExtra("part_index", 0);
             long sentTimestamp = System.currentTimeMillis();
+            if (admission.onSegmentAcked(queueId, SystemClock.elapsedRealtime())) {
+                resumeFetching();
+            }
             
-            PendingSms sms = pendingSmsMap.get(queueId);
-            if (sms != null) {
-                sms.sentTimestamp = sentTimestamp;
+            // Only the last outstanding part or the first failing part produces a status
+            int outcome = multipartTracker.onPartSent(queueId, partIndex, resultCode == Activity.RESULT_OK);
+            if (outcome == MultipartTracker.PENDING) {
+                return;
             }
             
-            switch (getResultCode()) {
-                case Activity.RESULT_OK:
+            sms.sentTimestamp = sentTimestamp;
+            
+            if (outcome == MultipartTracker.COMPLETE) {
+                if (log.isEnabled(AppLog.INFO)) {
                     logMessage("SMS sent: Queue " + queueId);
-                    sentCounter++;
-                    updateNotification();
-                    reportStatus(queueId, phone, "sent", shipmentId, "", sentTimestamp, null, null, message);
-                    break;
-                    
+                }
+                statistics.recordSent();
+                health.recordSend(false);
+                reportStatus(queueId, phone, "sent", shipmentId, "", sentTimestamp, null, null, message);
+                // The delivery window starts once every part is sent
+                sms.sentConfirmed = true;
+                armDeliveryTimeout(sms);
+                return;
+            }
+            
+            String errorCode;
+            switch (resultCode) {
                 case SmsManager.RESULT_ERROR_GENERIC_FAILURE:
-                    failedCounter++;
-                    updateNotification();
-                    logMessage("SMS failed (Generic): Queue " + queueId + ", Phone: '" + phone + "', Result code: " + getResultCode());
-                    reportStatus(queueId, phone, "failed", shipmentId, "GENERIC_FAILURE", sentTimestamp, null, null, message);
-                    pendingSmsMap.remove(queueId);
+                    errorCode = "GENERIC_FAILURE";
+                    logMessage("SMS failed (Generic): Queue " + queueId + ", Phone: '" + phone + "', Result code: " + resultCode);
                     break;
                     
                 case SmsManager.RESULT_ERROR_NO_SERVICE:
-                    failedCounter++;
-                    updateNotification();
+                    errorCode = "NO_SERVICE";
                     logMessage("SMS failed (No Service): Queue " + queueId);
-                    reportStatus(queueId, phone, "failed", shipmentId, "NO_SERVICE", sentTimestamp, null, null, message);
-                    pendingSmsMap.remove(queueId);
                     break;
                     
                 case SmsManager.RESULT_ERROR_NULL_PDU:
-                    failedCounter++;
-                    updateNotification();
+                    errorCode = "NULL_PDU";
                     logMessage("SMS failed (Null PDU): Queue " + queueId);
-                    reportStatus(queueId, phone, "failed", shipmentId, "NULL_PDU", sentTimestamp, null, null, message);
-                    pendingSmsMap.remove(queueId);
                     break;
                     
                 case SmsManager.RESULT_ERROR_RADIO_OFF:
-                    failedCounter++;
-                    updateNotification();
+                    errorCode = "RADIO_OFF";
                     logMessage("SMS failed (Radio Off): Queue " + queueId);
-                    reportStatus(queueId, phone, "failed", shipmentId, "RADIO_OFF", sentTimestamp, null, null, message);
-                    pendingSmsMap.remove(queueId);
                     break;
                     
                 default:
-                    failedCounter++;
-                    updateNotification();
+                    errorCode = "UNKNOWN_ERROR";
                     logMessage("SMS failed (Unknown): Queue " + queueId);
-                    reportStatus(queueId, phone, "failed", shipmentId, "UNKNOWN_ERROR", sentTimestamp, null, null, message);
-                    pendingSmsMap.remove(queueId);
                     break;
             }
+            
+            int partCount = multipartTracker.getPartCount(queueId);
+            if (partCount > 1) {
+                errorCode += " (part " + (partIndex + 1) + "/" + partCount + ")";
+            }
+            statistics.recordFailed();
+            health.recordSend(true);
+            reportStatus(queueId, phone, "failed", shipmentId, errorCode, sentTimestamp, null, null, message);
+            finishSms(queueId);
         }
     }
     
@@ -608,57 +1496,79 @@ public class SmsProbeService extends Service {
     private class SmsDeliveredReceiver extends BroadcastReceiver {
         @Override
         public void onReceive(Context context, Intent intent) {
-            int queueId = intent.getIntExtra("queue_id", 0);
-            String phone = intent.getStringExtra("phone");
-            long shipmentId = intent.getLongExtra("shipment_id", 0);
-            String message = intent.getStringExtra("message");
+            int resultCode = getResultCode();
+            if (resultCode != Activity.RESULT_OK && resultCode != Activity.RESULT_CANCELED) {
+                return;
+            }
+            
+            PendingSms sms = resultTokens.resolve(intent.getIntExtra("token", RequestCodeAllocator.NO_TOKEN));
+            if (sms == null) {
+                logMessage("Ignoring delivery report for a finished message");
+                return;
+            }
+            
+            int queueId = sms.queueId;
+            String phone = sms.phone;
+            long shipmentId = sms.shipmentId;
+            String message = sms.message;
+            int partIndex = intent.getIntExtra("part_index", 0);
             long deliveredTimestamp = System.currentTimeMillis();
             
-            PendingSms sms = pendingSmsMap.get(queueId);
-            Long sentTimestamp = sms != null ? sms.sentTimestamp : null;
+            // Delivered only once every part has a delivery report
+            int outcome = multipartTracker.onPartDelivered(queueId, partIndex, resultCode == Activity.RESULT_OK);
+            if (outcome == MultipartTracker.PENDING) {
+                return;
+            }
+            
+            Long sentTimestamp = sms.sentTimestamp > 0 ? sms.sentTimestamp : null;
             Integer deliveryTimeSeconds = null;
             
             if (sentTimestamp != null) {
                 deliveryTimeSeconds = (int) ((deliveredTimestamp - sentTimestamp) / 1000);
             }
             
-            switch (getResultCode()) {
-                case Activity.RESULT_OK:
+            if (outcome == MultipartTracker.COMPLETE) {
+                if (log.isEnabled(AppLog.INFO)) {
                     logMessage("SMS delivered: Queue " + queueId);
-                    deliveredCounter++;
-                    updateNotification();
-                    reportStatus(queueId, phone, "delivered", shipmentId, "", 
-                               sentTimestamp, deliveredTimestamp, deliveryTimeSeconds, message);
-                    pendingSmsMap.remove(queueId);
-                    break;
-                    
-                case Activity.RESULT_CANCELED:
-                    logMessage("SMS delivery unconfirmed: Queue " + queueId);
-                    reportStatus(queueId, phone, "sent_unconfirmed", shipmentId, "", 
-                               sentTimestamp, null, null, message);
-                    pendingSmsMap.remove(queueId);
-                    break;
+                }
+                statistics.recordDelivered();
+                reportStatus(queueId, phone, "delivered", shipmentId, "", 
+                           sentTimestamp, deliveredTimestamp, deliveryTimeSeconds, message);
+            } else {
+                logMessage("SMS delivery unconfirmed: Queue " + queueId);
+                reportStatus(queueId, phone, "sent_unconfirmed", shipmentId, "", 
+                           sentTimestamp, null, null, message);
             }
+            finishSms(queueId);
         }
     }
     
-    private void trackShipmentForReplies(String phone, long shipmentId, int queueId, String originalMessage) {
+    private synchronized void trackShipmentForReplies(PendingSms sms) {
         try {
             // Save shipment info for reply correlation
             SharedPreferences prefs = getSharedPreferences("ShipmentTracking", MODE_PRIVATE);
             JSONObject shipmentInfo = new JSONObject();
-            shipmentInfo.put("shipment_id", shipmentId);
-            shipmentInfo.put("queue_id", queueId);
-            shipmentInfo.put("original_message", originalMessage);
+            shipmentInfo.put("shipment_id", sms.shipmentId);
+            shipmentInfo.put("queue_id", sms.queueId);
+            if (sms.templateId != null) {
+                // The text is re-rendered from the template cache when a reply arrives
+                shipmentInfo.put("template_id", sms.templateId);
+                shipmentInfo.put("template_version", sms.templateVersion);
+                shipmentInfo.put("params", sms.params != null ? sms.params : new JSONObject());
+            } else {
+                shipmentInfo.put("original_message", sms.message);
+            }
             shipmentInfo.put("sent_timestamp", System.currentTimeMillis());
             
-            prefs.edit().putString(phone, shipmentInfo.toString()).apply();
+            // Keyed by E.164 so replies match whatever format the network reports the sender in
+            String key = PhoneNumberNormalizer.getDefault().toE164(sms.phone);
+            prefs.edit().putString(key, shipmentInfo.toString()).apply();
             
             // Also add to recent recipients for reply filtering
             SharedPreferences recipientPrefs = getSharedPreferences("SmsRecipients", MODE_PRIVATE);
             String recentNumbers = recipientPrefs.getString("recent_numbers", "");
-            if (!recentNumbers.contains(phone)) {
-                recentNumbers = phone + "," + recentNumbers;
+            if (!recentNumbers.contains(key)) {
+                recentNumbers = key + "," + recentNumbers;
                 // Keep only last 100 numbers
                 String[] numbers = recentNumbers.split(",");
                 if (numbers.length > 100) {
@@ -676,37 +1586,7 @@ public class SmsProbeService extends Service {
     }
     
     private void logMessage(String message) {
-        // Check if logging is enabled
-        SharedPreferences settingsPrefs = getSharedPreferences("AppSettings", MODE_PRIVATE);
-        boolean loggingEnabled = settingsPrefs.getBoolean("logging_enabled", AppConfig.LOGGING_ENABLED_DEFAULT);
-        if (!loggingEnabled) {
-            return;
-        }
-        
-        String timestamp = dateFormat.format(new Date());
-        String logEntry = timestamp + " - " + message;
-        
-        // Save to SharedPreferences for MainActivity to read
-        SharedPreferences prefs = getSharedPreferences("SmsProbeLog", MODE_PRIVATE);
-        String currentLog = prefs.getString("log", "");
-        String newLog = logEntry + "\n" + currentLog;
-        
-        // Keep only last MAX_LOG_ENTRIES lines or MAX_LOG_SIZE characters, whichever is smaller
-        String[] lines = newLog.split("\n");
-        StringBuilder trimmedLog = new StringBuilder();
-        int lineCount = 0;
-        int charCount = 0;
-        
-        for (String line : lines) {
-            if (lineCount >= AppConfig.MAX_LOG_ENTRIES || charCount + line.length() > AppConfig.MAX_LOG_SIZE) {
-                break;
-            }
-            trimmedLog.append(line).append("\n");
-            lineCount++;
-            charCount += line.length() + 1;
-        }
-        
-        prefs.edit().putString("log", trimmedLog.toString()).apply();
+        log.info(message);
     }
     
     @Override
@@ -714,10 +1594,50 @@ public class SmsProbeService extends Service {
         super.onDestroy();
         isRunning = false;
         handler.removeCallbacks(probeRunnable);
+        handler.removeCallbacks(probeFallbackTick);
+        handler.removeCallbacks(timeoutTick);
+        handler.removeCallbacks(leaseCheck);
+        if (statusUpdater != null) {
+            handler.removeCallbacks(statusUpdater);
+        }
+        if (runtimeConfig != null) {
+            runtimeConfig.removeListener(configListener);
+        }
+        if (probeAlarmIntent != null) {
+            AlarmManager alarmManager = (AlarmManager) getSystemService(Context.ALARM_SERVICE);
+            alarmManager.cancel(probeAlarmIntent);
+        }
+        
+        if (pushClient != null) {
+            pushClient.stop();
+        }
+        ReplyStatsAggregator.getInstance(this).flush();
+        if (connectivityGate != null) {
+            logMessage("Connectivity: " + connectivityGate.toJson().toString());
+            connectivityGate.stop();
+        }
+        if (health != null) {
+            health.stop();
+        }
+        if (probeExecutor != null) {
+            probeExecutor.shutdownNow();
+        }
+        if (dispatchExecutor != null) {
+            // Queued dispatch jobs would send after the result receivers are gone, so none run;
+            // the tasks they were for are reported failed and the server can re-issue them
+            dispatchExecutor.shutdownNow();
+            failQueuedTasks();
+        }
         
         // Send any remaining status updates
         sendBatchStatusUpdate();
         
+        // Publish the final statistics state, skipping the coalescing window
+        if (statistics != null) {
+            statistics.flush();
+            logMessage("Statistics publisher coalesced " + statistics.getDroppedUpdates() + " updates");
+        }
+        
         // Unregister receivers
         if (smsSentReceiver != null) {
             unregisterReceiver(smsSentReceiver);
@@ -725,40 +1645,26 @@ public class SmsProbeService extends Service {
         if (smsDeliveredReceiver != null) {
             unregisterReceiver(smsDeliveredReceiver);
         }
-        
-        if (wakeLock != null && wakeLock.isHeld()) {
-            wakeLock.release();
+        if (probeAlarmReceiver != null) {
+            unregisterReceiver(probeAlarmReceiver);
         }
         
-        stopForeground(true);
-    }
-    
-    /**
-     * Format phone number for local sending
-     * Removes country codes and ensures proper local format
-     */
-    private String formatPhoneNumberForLocal(String phone) {
-        // Remove all non-numeric characters except +
-        phone = phone.replaceAll("[^0-9+]", "");
+        // No status changes after this point; write the dedupe window before the process can go
+        TaskDedupeWindow.getInstance(this).flush();
         
-        // Remove North Macedonia country code if present
-        if (phone.startsWith("+389")) {
-            phone = "0" + phone.substring(4);
-        } else if (phone.startsWith("389")) {
-            phone = "0" + phone.substring(3);
-        } else if (phone.startsWith("00389")) {
-            phone = "0" + phone.substring(5);
-        }
+        logMessage("Dispatch lane wait times: " + dispatchState.getWaitStats().toString());
+        logMessage("Segments saved by encoding planner: " + segmentsSavedTotal.get());
+        logMessage("Scheduler lag: " + ServiceScheduler.getInstance().toHeaderValue());
+        logMessage("Admission: " + admission.toHeaderValue(SystemClock.elapsedRealtime()));
         
-        // Ensure number starts with 0 for local format (if it's not already international)
-        if (!phone.startsWith("0") && !phone.startsWith("+")) {
-            // If it's a 7 or 8 digit number starting with 7 (mobile), add 0
-            if (phone.startsWith("7") && (phone.length() == 8 || phone.length() == 7)) {
-                phone = "0" + phone;
-            }
+        if (wakeLocks != null) {
+            logMessage("Wake lock usage: " + wakeLocks.toJson().toString());
+            wakeLocks.releaseAll();
         }
         
-        return phone;
+        // Last, so the shutdown metrics above reach the stored logs
+        AppLog.flushAll();
+        stopForeground(true);
     }
     
     @Override
@@ -10,50 +10,69 @@ import android.provider.Telephony;
 import android.telephony.SmsMessage;
 import android.util.Log;
 import org.json.JSONObject;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.Locale;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class SmsReceiver extends BroadcastReceiver {
     
     private static final String TAG = "SmsReceiver";
-    private SimpleDateFormat dateFormat = new SimpleDateFormat("HH:mm:ss", Locale.getDefault());
+    
+    // Opt-out only when the whole reply is the keyword, so ordinary replies such as
+    // "When will it end?" or "don't cancel my delivery" never blacklist a customer
+    // (Serbian: ODJAVI, PREKINI, OTKAŽI)
+    private static final Pattern OPT_OUT = Pattern.compile(
+        "(STOP|STOP ALL|UNSUBSCRIBE|ODJAVI|PREKINI|OTKAŽI|OTKAZI)[.!]*");
     
     @Override
-    public void onReceive(Context context, Intent intent) {
+    public void onReceive(final Context context, final Intent intent) {
         logMessage(context, "SMS broadcast received");
         
         if (Telephony.Sms.Intents.SMS_RECEIVED_ACTION.equals(intent.getAction())) {
-            Bundle bundle = intent.getExtras();
-            if (bundle != null) {
-                try {
-                    Object[] pdus = (Object[]) bundle.get("pdus");
-                    String format = bundle.getString("format");
-                    
-                    if (pdus != null) {
-                        logMessage(context, "Processing " + pdus.length + " SMS PDUs");
-                        for (Object pdu : pdus) {
-                            SmsMessage smsMessage;
-                            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-                                smsMessage = SmsMessage.createFromPdu((byte[]) pdu, format);
-                            } else {
-                                smsMessage = SmsMessage.createFromPdu((byte[]) pdu);
-                            }
-                            
-                            if (smsMessage != null) {
-                                String sender = smsMessage.getDisplayOriginatingAddress();
-                                String body = smsMessage.getMessageBody();
-                                logMessage(context, "SMS from " + sender + ": " + body);
-                                processSmsReply(context, smsMessage);
-                            }
+            // Loading the reply queue, templates and suppression index reads prefs; keep it off the main thread
+            final PendingResult result = goAsync();
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        processIntent(context, intent);
+                    } finally {
+                        if (result != null) {
+                            result.finish();
                         }
                     }
-                } catch (Exception e) {
-                    Log.e(TAG, "Error processing SMS: " + e.getMessage());
-                    logMessage(context, "Error processing SMS: " + e.getMessage());
                 }
+            }, "SmsReplyLoader").start();
+        }
+    }
+    
+    private void processIntent(Context context, Intent intent) {
+        Bundle bundle = intent.getExtras();
+        if (bundle != null) {
+            try {
+                Object[] pdus = (Object[]) bundle.get("pdus");
+                String format = bundle.getString("format");
+                
+                if (pdus != null) {
+                    logMessage(context, "Processing " + pdus.length + " SMS PDUs");
+                    for (Object pdu : pdus) {
+                        SmsMessage smsMessage;
+                        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                            smsMessage = SmsMessage.createFromPdu((byte[]) pdu, format);
+                        } else {
+                            smsMessage = SmsMessage.createFromPdu((byte[]) pdu);
+                        }
+                        
+                        if (smsMessage != null) {
+                            String sender = smsMessage.getDisplayOriginatingAddress();
+                            String body = smsMessage.getMessageBody();
+                            logMessage(context, "SMS from " + sender + ": " + body);
+                            processSmsReply(context, smsMessage);
+                        }
+                    }
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Error processing SMS: " + e.getMessage());
+                logMessage(context, "Error processing SMS: " + e.getMessage());
             }
         }
     }
@@ -82,6 +101,16 @@ public class SmsReceiver extends BroadcastReceiver {
                     reply.put("original_queue_id", shipmentInfo.getInt("queue_id"));
                     // Include the original message we sent
                     String originalMessage = shipmentInfo.optString("original_message", "");
+                    if (originalMessage.isEmpty() && shipmentInfo.has("template_id")) {
+                        // Template tasks keep only the params; re-render only with the version that was sent
+                        TemplateCache.Template template = TemplateCache.getInstance(context).getExact(
+                            shipmentInfo.getString("template_id"), shipmentInfo.optInt("template_version", 0));
+                        TemplateCache.Rendered rendered = template != null
+                            ? template.render(shipmentInfo.optJSONObject("params")) : null;
+                        if (rendered != null) {
+                            originalMessage = rendered.text;
+                        }
+                    }
                     if (!originalMessage.isEmpty()) {
                         reply.put("original_message", originalMessage);
                     }
@@ -106,6 +135,12 @@ public class SmsReceiver extends BroadcastReceiver {
                 // Queue for sending to server
                 ReplyQueueManager.getInstance(context).queueReply(reply);
                 
+                // Stop messaging numbers that asked to opt out
+                if (AppConfig.ENABLE_AUTO_OPT_OUT && replyType.equals("opt_out")
+                        && SuppressionIndex.getInstance(context).addOptOut(sender)) {
+                    logMessage(context, "Opted out: " + sender);
+                }
+                
                 // Update statistics
                 updateReplyStatistics(context, replyType);
                 
@@ -149,7 +184,7 @@ public class SmsReceiver extends BroadcastReceiver {
                upperMessage.contains("PACKAGE");
     }
     
-    private String classifyReply(String message) {
+    static String classifyReply(String message) {
         String upperMessage = message.toUpperCase();
         
         // PIN confirmation pattern
@@ -158,8 +193,7 @@ public class SmsReceiver extends BroadcastReceiver {
             return "pin_confirmation";
         }
         
-        // Opt-out patterns (Serbian: STOP, ODJAVI, PREKINI, OTKAŽI)
-        if (upperMessage.matches(".*(STOP|UNSUBSCRIBE|CANCEL|QUIT|END|ODJAVI|PREKINI|OTKAŽI|OTKAZI).*")) {
+        if (OPT_OUT.matcher(upperMessage.trim()).matches()) {
             return "opt_out";
         }
         
@@ -189,7 +223,11 @@ public class SmsReceiver extends BroadcastReceiver {
     private JSONObject findRelatedShipment(Context context, String phoneNumber) {
         try {
             SharedPreferences prefs = context.getSharedPreferences("ShipmentTracking", Context.MODE_PRIVATE);
-            String trackingData = prefs.getString(phoneNumber, null);
+            // Outbound numbers are tracked by E.164; older entries by the number as sent
+            String trackingData = prefs.getString(PhoneNumberNormalizer.getDefault().toE164(phoneNumber), null);
+            if (trackingData == null) {
+                trackingData = prefs.getString(phoneNumber, null);
+            }
             
             if (trackingData != null) {
                 JSONObject data = new JSONObject(trackingData);
@@ -207,53 +245,20 @@ public class SmsReceiver extends BroadcastReceiver {
     }
     
     private String getOurPhoneNumber(Context context) {
-        SharedPreferences prefs = context.getSharedPreferences("AppConfig", Context.MODE_PRIVATE);
-        return prefs.getString("our_phone_number", AppConfig.DEFAULT_PHONE_NUMBER);
+        return SettingsRegistry.getInstance(context).get().ourPhoneNumber;
     }
     
-    private String getDeviceId(Context context) {
-        SharedPreferences prefs = context.getSharedPreferences("AppConfig", Context.MODE_PRIVATE);
-        String deviceId = prefs.getString("device_id", null);
-        
-        if (deviceId == null) {
-            // Generate a unique device ID
-            deviceId = "AND_" + System.currentTimeMillis() + "_" + Build.DEVICE;
-            prefs.edit().putString("device_id", deviceId).apply();
-        }
-        
-        return deviceId;
+    static String getDeviceId(Context context) {
+        // Generated on first load of the settings registry
+        return SettingsRegistry.getInstance(context).get().deviceId;
     }
     
     private void updateReplyStatistics(Context context, String replyType) {
-        SharedPreferences prefs = context.getSharedPreferences("ReplyStats", Context.MODE_PRIVATE);
-        String key = "reply_count_" + replyType;
-        int currentCount = prefs.getInt(key, 0);
-        prefs.edit().putInt(key, currentCount + 1).apply();
-        
-        // Update total count
-        int totalCount = prefs.getInt("total_replies", 0);
-        prefs.edit().putInt("total_replies", totalCount + 1).apply();
+        // Per-type and total counts are flushed to ReplyStats together by the aggregator
+        ReplyStatsAggregator.getInstance(context).recordReply(replyType);
     }
     
     private void logMessage(Context context, String message) {
-        String timestamp = dateFormat.format(new Date());
-        String logEntry = timestamp + " - [REPLY] " + message;
-        
-        SharedPreferences prefs = context.getSharedPreferences("SmsProbeLog", Context.MODE_PRIVATE);
-        String currentLog = prefs.getString("log", "");
-        String newLog = logEntry + "\n" + currentLog;
-        
-        // Keep only last 100 lines
-        String[] lines = newLog.split("\n");
-        if (lines.length > 100) {
-            StringBuilder trimmedLog = new StringBuilder();
-            for (int i = 0; i < 100; i++) {
-                trimmedLog.append(lines[i]).append("\n");
-            }
-            newLog = trimmedLog.toString();
-        }
-        
-        prefs.edit().putString("log", newLog).apply();
-        Log.d(TAG, logEntry);
+        AppLog.get(context, TAG, AppLog.SERVICE_LOG, " - [REPLY] ").info(message);
     }
 }
\ No newline at end of file
@@ -0,0 +1,60 @@
+package com.example.smssender;
+
+import android.os.SystemClock;
+import android.util.Log;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cold start milestones for the service and the UI
+ *
+ * Each component calls begin() at the top of onCreate; mark() records the
+ * first time a milestone is reached, as milliseconds since that component
+ * began. Later marks of the same milestone are ignored. The recorded values
+ * go to logcat and to the server in the X-Startup probe header.
+ */
+public class StartupTrace {
+    
+    private static final String TAG = "StartupTrace";
+    
+    public static final String SERVICE = "service";
+    public static final String UI = "ui";
+    
+    private static final Map<String, Long> started = new LinkedHashMap<>();
+    private static final Map<String, Long> milestones = new LinkedHashMap<>();
+    
+    public static synchronized void begin(String component) {
+        if (!started.containsKey(component)) {
+            started.put(component, SystemClock.elapsedRealtime());
+        }
+    }
+    
+    /**
+     * Records a milestone once; returns ms since the component began, or -1 if already recorded
+     */
+    public static synchronized long mark(String component, String milestone) {
+        Long start = started.get(component);
+        String key = component + "_" + milestone;
+        if (start == null || milestones.containsKey(key)) {
+            return -1;
+        }
+        long elapsed = SystemClock.elapsedRealtime() - start;
+        milestones.put(key, elapsed);
+        Log.i(TAG, key + " after " + elapsed + "ms");
+        return elapsed;
+    }
+    
+    /**
+     * Compact form for the probe header: service_first_probe_ms=..;ui_first_frame_ms=..
+     */
+    public static synchronized String toHeaderValue() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Long> entry : milestones.entrySet()) {
+            if (sb.length() > 0) {
+                sb.append(';');
+            }
+            sb.append(entry.getKey()).append("_ms=").append(entry.getValue());
+        }
+        return sb.toString();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,115 @@
+package com.example.smssender;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces SMS statistics updates
+ *
+ * Counters are updated atomically from any thread. Publishing (notification,
+ * broadcast, UI) happens at most once per interval on the handler thread, and
+ * the last change is always published on the trailing edge.
+ */
+public class StatisticsPublisher {
+    
+    public interface Listener {
+        void onStatisticsPublished(Snapshot snapshot);
+    }
+    
+    public static class Snapshot {
+        public final int sent;
+        public final int failed;
+        public final int delivered;
+        public final long droppedUpdates;
+        
+        Snapshot(int sent, int failed, int delivered, long droppedUpdates) {
+            this.sent = sent;
+            this.failed = failed;
+            this.delivered = delivered;
+            this.droppedUpdates = droppedUpdates;
+        }
+    }
+    
+    private final AtomicInteger sentCounter = new AtomicInteger();
+    private final AtomicInteger failedCounter = new AtomicInteger();
+    private final AtomicInteger deliveredCounter = new AtomicInteger();
+    private final AtomicLong droppedUpdates = new AtomicLong();
+    private final AtomicBoolean publishPending = new AtomicBoolean(false);
+    
+    private final Handler handler;
+    private final Listener listener;
+    private final long minIntervalMs;
+    private volatile long lastPublishTime = 0;
+    
+    private final Runnable publishRunnable = new Runnable() {
+        @Override
+        public void run() {
+            // Clear the flag before reading counters so a concurrent update schedules a new publish
+            publishPending.set(false);
+            publishNow();
+        }
+    };
+    
+    public StatisticsPublisher(long minIntervalMs, Listener listener) {
+        this(new Handler(Looper.getMainLooper()), minIntervalMs, listener);
+    }
+    
+    public StatisticsPublisher(Handler handler, long minIntervalMs, Listener listener) {
+        this.handler = handler;
+        this.minIntervalMs = minIntervalMs;
+        this.listener = listener;
+    }
+    
+    public void recordSent() {
+        sentCounter.incrementAndGet();
+        requestPublish();
+    }
+    
+    public void recordFailed() {
+        failedCounter.incrementAndGet();
+        requestPublish();
+    }
+    
+    public void recordDelivered() {
+        deliveredCounter.incrementAndGet();
+        requestPublish();
+    }
+    
+    public Snapshot getSnapshot() {
+        return new Snapshot(sentCounter.get(), failedCounter.get(), deliveredCounter.get(), droppedUpdates.get());
+    }
+    
+    public long getDroppedUpdates() {
+        return droppedUpdates.get();
+    }
+    
+    /**
+     * Publishes the current state immediately, cancelling any scheduled publish
+     */
+    public void flush() {
+        handler.removeCallbacks(publishRunnable);
+        publishPending.set(false);
+        publishNow();
+    }
+    
+    private void requestPublish() {
+        if (!publishPending.compareAndSet(false, true)) {
+            // A publish is already scheduled and will pick up this change
+            droppedUpdates.incrementAndGet();
+            return;
+        }
+        
+        long elapsed = SystemClock.elapsedRealtime() - lastPublishTime;
+        long delay = Math.max(0, minIntervalMs - elapsed);
+        handler.postDelayed(publishRunnable, delay);
+    }
+    
+    private void publishNow() {
+        lastPublishTime = SystemClock.elapsedRealtime();
+        listener.onStatisticsPublished(getSnapshot());
+    }
+}
\ No newline at end of file
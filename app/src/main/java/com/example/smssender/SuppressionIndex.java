@@ -0,0 +1,263 @@
+package com.example.smssender;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import java.util.Arrays;
+
+/**
+ * Opt-out suppression index checked before every send
+ *
+ * Numbers are kept as E.164 digits in sorted long arrays: the list synced
+ * from the server (full or delta, tracked by a version string) and the
+ * opt-out replies received locally that the server has not confirmed yet.
+ * Every change publishes an immutable snapshot of the merged array plus a
+ * Bloom filter, so the send path checks a few bits and only binary-searches
+ * numbers that might be suppressed.
+ */
+public class SuppressionIndex {
+    
+    private static final String PREFS_NAME = "Suppression";
+    private static final int BLOOM_BITS_PER_ENTRY = 10;
+    private static final int BLOOM_HASHES = 7;
+    
+    private static class Snapshot {
+        final long[] numbers;   // sorted
+        final long[] bloom;
+        
+        Snapshot(long[] numbers) {
+            this.numbers = numbers;
+            this.bloom = new long[Math.max(1, (numbers.length * BLOOM_BITS_PER_ENTRY + 63) / 64)];
+            for (long number : numbers) {
+                long hash = mix(number);
+                int h1 = (int) hash;
+                int h2 = (int) (hash >>> 32);
+                for (int i = 0; i < BLOOM_HASHES; i++) {
+                    int bit = bitIndex(h1 + i * h2, bloom.length);
+                    bloom[bit >>> 6] |= 1L << bit;
+                }
+            }
+        }
+        
+        boolean contains(long number) {
+            long hash = mix(number);
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 0; i < BLOOM_HASHES; i++) {
+                int bit = bitIndex(h1 + i * h2, bloom.length);
+                if ((bloom[bit >>> 6] & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return Arrays.binarySearch(numbers, number) >= 0;
+        }
+    }
+    
+    private static SuppressionIndex instance;
+    
+    private final SharedPreferences prefs;
+    private long[] serverNumbers;
+    private long[] localNumbers;
+    private String version;
+    private volatile Snapshot snapshot;
+    
+    private SuppressionIndex(Context context) {
+        prefs = context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        serverNumbers = parseList(prefs.getString("numbers", ""));
+        localNumbers = parseList(prefs.getString("local", ""));
+        version = prefs.getString("version", null);
+        snapshot = new Snapshot(union(serverNumbers, localNumbers));
+    }
+    
+    public static synchronized SuppressionIndex getInstance(Context context) {
+        if (instance == null) {
+            instance = new SuppressionIndex(context);
+        }
+        return instance;
+    }
+    
+    /**
+     * True if the number asked not to be messaged; lock-free
+     */
+    public boolean isSuppressed(String phone) {
+        long key = toKey(phone);
+        return key >= 0 && snapshot.contains(key);
+    }
+    
+    /**
+     * Records an opt-out reply; kept locally until the server list contains it
+     */
+    public synchronized boolean addOptOut(String phone) {
+        long key = toKey(phone);
+        if (key < 0 || snapshot.contains(key)) {
+            return false;
+        }
+        localNumbers = union(localNumbers, new long[] {key});
+        publish();
+        return true;
+    }
+    
+    public synchronized String getVersion() {
+        return version;
+    }
+    
+    public int size() {
+        return snapshot.numbers.length;
+    }
+    
+    /**
+     * Applies a server list: {"version", "full", "add": [phones], "remove": [phones]}
+     * A full list replaces the synced numbers; otherwise add/remove are a delta.
+     * Returns the number of suppressed numbers afterwards.
+     */
+    public synchronized int applyServerList(JSONObject list) {
+        long[] added = toKeys(list.optJSONArray("add"));
+        long[] removed = toKeys(list.optJSONArray("remove"));
+        
+        if (list.optBoolean("full", false)) {
+            serverNumbers = added;
+        } else {
+            serverNumbers = difference(union(serverNumbers, added), removed);
+        }
+        // Local opt-outs are dropped once the server has them, or has lifted them
+        localNumbers = difference(difference(localNumbers, serverNumbers), removed);
+        
+        String newVersion = list.optString("version", "");
+        version = newVersion.isEmpty() ? version : newVersion;
+        publish();
+        return snapshot.numbers.length;
+    }
+    
+    private void publish() {
+        snapshot = new Snapshot(union(serverNumbers, localNumbers));
+        prefs.edit()
+            .putString("numbers", joinList(serverNumbers))
+            .putString("local", joinList(localNumbers))
+            .putString("version", version)
+            .apply();
+    }
+    
+    /**
+     * E.164 digits as a long, or -1 for senders that are not phone numbers
+     */
+    static long toKey(String phone) {
+        String e164 = PhoneNumberNormalizer.getDefault().toE164(phone);
+        if (e164 == null) {
+            return -1;
+        }
+        int start = e164.startsWith("+") ? 1 : 0;
+        if (e164.length() == start || e164.length() - start > 18) {
+            return -1;
+        }
+        long key = 0;
+        for (int i = start; i < e164.length(); i++) {
+            char c = e164.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            key = key * 10 + (c - '0');
+        }
+        return key;
+    }
+    
+    private static long[] toKeys(JSONArray phones) {
+        if (phones == null) {
+            return new long[0];
+        }
+        long[] keys = new long[phones.length()];
+        int count = 0;
+        for (int i = 0; i < phones.length(); i++) {
+            long key = toKey(phones.optString(i, ""));
+            if (key >= 0) {
+                keys[count++] = key;
+            }
+        }
+        return sortedUnique(keys, count);
+    }
+    
+    private static long[] sortedUnique(long[] values, int count) {
+        Arrays.sort(values, 0, count);
+        int unique = 0;
+        for (int i = 0; i < count; i++) {
+            if (unique == 0 || values[unique - 1] != values[i]) {
+                values[unique++] = values[i];
+            }
+        }
+        return Arrays.copyOf(values, unique);
+    }
+    
+    private static long[] union(long[] a, long[] b) {
+        long[] result = new long[a.length + b.length];
+        int i = 0;
+        int j = 0;
+        int n = 0;
+        while (i < a.length || j < b.length) {
+            long next;
+            if (j >= b.length || (i < a.length && a[i] < b[j])) {
+                next = a[i++];
+            } else if (i >= a.length || b[j] < a[i]) {
+                next = b[j++];
+            } else {
+                next = a[i++];
+                j++;
+            }
+            result[n++] = next;
+        }
+        return n == result.length ? result : Arrays.copyOf(result, n);
+    }
+    
+    private static long[] difference(long[] a, long[] b) {
+        if (b.length == 0) {
+            return a;
+        }
+        long[] result = new long[a.length];
+        int n = 0;
+        for (long value : a) {
+            if (Arrays.binarySearch(b, value) < 0) {
+                result[n++] = value;
+            }
+        }
+        return n == result.length ? result : Arrays.copyOf(result, n);
+    }
+    
+    private static long[] parseList(String stored) {
+        if (stored == null || stored.isEmpty()) {
+            return new long[0];
+        }
+        String[] parts = stored.split(",");
+        long[] keys = new long[parts.length];
+        int count = 0;
+        for (String part : parts) {
+            try {
+                keys[count] = Long.parseLong(part);
+                count++;
+            } catch (NumberFormatException e) {
+                // Skip damaged entries
+            }
+        }
+        return sortedUnique(keys, count);
+    }
+    
+    private static String joinList(long[] keys) {
+        StringBuilder sb = new StringBuilder(keys.length * 12);
+        for (int i = 0; i < keys.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(keys[i]);
+        }
+        return sb.toString();
+    }
+    
+    private static long mix(long key) {
+        // SplitMix64 finalizer
+        key = (key ^ (key >>> 30)) * 0xBF58476D1CE4E5B9L;
+        key = (key ^ (key >>> 27)) * 0x94D049BB133111EBL;
+        return key ^ (key >>> 31);
+    }
+    
+    private static int bitIndex(int hash, int words) {
+        return (hash & Integer.MAX_VALUE) % (words * 64);
+    }
+}
\ No newline at end of file
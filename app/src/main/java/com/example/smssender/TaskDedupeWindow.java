@@ -0,0 +1,240 @@
+package com.example.smssender;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+
+/**
+ * Window of recently seen queue_ids with their last reported status
+ *
+ * A task handed out twice (probe response lost to a read timeout, server
+ * re-issue after a restart) must not be sent twice. The window is a ring of
+ * the last N queue_ids with a status code each, indexed by an open-addressing
+ * int table holding ring positions, so lookups need no boxing. The oldest id
+ * drops out when the ring wraps. The ring is persisted so the window
+ * survives service restarts; changes are written in one prefs edit at most
+ * every TASK_DEDUPE_FLUSH_INTERVAL.
+ */
+public class TaskDedupeWindow {
+    
+    private static final String PREFS_NAME = "TaskDedupe";
+    
+    // Status codes, index into this array; append only since codes are persisted
+    private static final String[] STATUSES = {
+        "processing", "pending", "sent", "sent_unconfirmed", "delivered",
+        "failed", "suppressed", "lease_expired"
+    };
+    
+    private static final int PENDING = 1;
+    
+    // Statuses that settle a task for good: the radio has taken it, or the recipient opted out
+    private static final boolean[] SETTLED = {
+        false, false, true, true, true,
+        false, true, false
+    };
+    
+    private static TaskDedupeWindow instance;
+    
+    private final SharedPreferences prefs;
+    private final Handler handler;
+    private final int[] ids;
+    private final byte[] statuses;
+    private final boolean[] admitted;  // admitted since this process started
+    private final int[] table;      // ring position + 1, 0 = empty
+    private final int mask;
+    private int next = 0;
+    private int size = 0;
+    private boolean dirty = false;
+    private boolean flushScheduled = false;
+    
+    private final Runnable flushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+    
+    TaskDedupeWindow(SharedPreferences prefs, Handler handler, int capacity) {
+        this.prefs = prefs;
+        this.handler = handler;
+        this.ids = new int[capacity];
+        this.statuses = new byte[capacity];
+        this.admitted = new boolean[capacity];
+        int tableSize = Integer.highestOneBit(capacity * 2 - 1) << 1;
+        this.table = new int[tableSize];
+        this.mask = tableSize - 1;
+        load();
+    }
+    
+    public static synchronized TaskDedupeWindow getInstance(Context context) {
+        if (instance == null) {
+            SharedPreferences prefs = context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+            instance = new TaskDedupeWindow(prefs, ServiceScheduler.getInstance().getHandler(),
+                AppConfig.TASK_DEDUPE_WINDOW);
+        }
+        return instance;
+    }
+    
+    /**
+     * Admits a new task; returns null if it should be sent, or the last status
+     * reported for it if it is a duplicate. Settled tasks are never sent again,
+     * and neither is a task the device still holds (queued or being sent). A
+     * task left processing or pending by an earlier process was lost before
+     * the radio took it, so it is admitted again, as are failed and
+     * lease-expired tasks.
+     */
+    public synchronized String admit(int queueId, boolean held) {
+        int position = find(queueId);
+        if (position >= 0) {
+            int code = statuses[position];
+            // Admitted by this process but not held yet: another thread is still preparing it
+            boolean preparing = admitted[position] && code <= PENDING;
+            if (held || preparing || SETTLED[code]) {
+                return STATUSES[code];
+            }
+            statuses[position] = 0;
+        } else {
+            position = insert(queueId);
+        }
+        admitted[position] = true;
+        scheduleFlush();
+        return null;
+    }
+    
+    /**
+     * Records the latest status of a tracked task
+     */
+    public synchronized void update(int queueId, String status) {
+        int position = find(queueId);
+        int code = codeOf(status);
+        if (position < 0 || code < 0 || statuses[position] == code) {
+            return;
+        }
+        statuses[position] = (byte) code;
+        // Intermediate states are not worth a prefs write; a restart re-reports them as processing
+        if (!status.equals("pending")) {
+            scheduleFlush();
+        }
+    }
+    
+    public synchronized int size() {
+        return size;
+    }
+    
+    private int find(int queueId) {
+        for (int i = hash(queueId) & mask; table[i] != 0; i = (i + 1) & mask) {
+            if (ids[table[i] - 1] == queueId) {
+                return table[i] - 1;
+            }
+        }
+        return -1;
+    }
+    
+    // Returns the ring position used
+    private int insert(int queueId) {
+        if (size == ids.length) {
+            remove(next);
+        } else {
+            size++;
+        }
+        ids[next] = queueId;
+        statuses[next] = 0;
+        admitted[next] = false;
+        int i = hash(queueId) & mask;
+        while (table[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        table[i] = next + 1;
+        int position = next;
+        next = (next + 1) % ids.length;
+        return position;
+    }
+    
+    private void remove(int position) {
+        int i = hash(ids[position]) & mask;
+        while (table[i] != position + 1) {
+            i = (i + 1) & mask;
+        }
+        // Backward-shift deletion keeps every probe chain unbroken without tombstones
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            if (table[j] == 0) {
+                break;
+            }
+            int home = hash(ids[table[j] - 1]) & mask;
+            boolean movable = i <= j ? (home <= i || home > j) : (home <= i && home > j);
+            if (movable) {
+                table[i] = table[j];
+                i = j;
+            }
+        }
+        table[i] = 0;
+    }
+    
+    private void load() {
+        String stored = prefs != null ? prefs.getString("window", "") : "";
+        if (stored.isEmpty()) {
+            return;
+        }
+        // Oldest first, so replaying the inserts restores the ring order
+        for (String entry : stored.split(",")) {
+            int colon = entry.indexOf(':');
+            try {
+                int queueId = Integer.parseInt(entry.substring(0, colon));
+                int code = Integer.parseInt(entry.substring(colon + 1));
+                if (find(queueId) < 0 && code >= 0 && code < STATUSES.length) {
+                    statuses[insert(queueId)] = (byte) code;
+                }
+            } catch (Exception e) {
+                // Skip damaged entries
+            }
+        }
+    }
+    
+    /**
+     * Writes the whole ring in one prefs edit if anything changed since the last write
+     */
+    public synchronized void flush() {
+        if (handler != null) {
+            handler.removeCallbacks(flushRunnable);
+        }
+        flushScheduled = false;
+        if (!dirty || prefs == null) {
+            return;
+        }
+        dirty = false;
+        StringBuilder sb = new StringBuilder(size * 10);
+        int start = size == ids.length ? next : 0;
+        for (int n = 0; n < size; n++) {
+            int position = (start + n) % ids.length;
+            if (n > 0) {
+                sb.append(',');
+            }
+            sb.append(ids[position]).append(':').append(statuses[position]);
+        }
+        prefs.edit().putString("window", sb.toString()).apply();
+    }
+    
+    private void scheduleFlush() {
+        dirty = true;
+        if (!flushScheduled && handler != null) {
+            flushScheduled = true;
+            handler.postDelayed(flushRunnable, AppConfig.TASK_DEDUPE_FLUSH_INTERVAL);
+        }
+    }
+    
+    private static int codeOf(String status) {
+        for (int i = 0; i < STATUSES.length; i++) {
+            if (STATUSES[i].equals(status)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    private static int hash(int queueId) {
+        int h = queueId * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,177 @@
+package com.example.smssender;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import org.json.JSONException;
+import org.json.JSONObject;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Versioned cache of message templates for parameterised tasks
+ *
+ * A task may carry template_id (and optionally template_version) plus params
+ * instead of the rendered message. Templates are parsed once into literal
+ * parts and {name} placeholders, with the GSM-7 septet count of the literal
+ * parts precomputed, so rendering only has to measure the parameter values.
+ * Templates are kept in an LRU map backed by prefs; the service fetches
+ * missing or outdated templates from the server.
+ */
+public class TemplateCache {
+    
+    private static final String PREFS_NAME = "Templates";
+    
+    public static class Template {
+        public final String id;
+        public final int version;
+        public final String text;
+        final String[] literals;    // one more than names
+        final String[] names;
+        final int literalSeptets;   // -1 if the literal parts need UCS-2
+        
+        Template(String id, int version, String text) {
+            this.id = id;
+            this.version = version;
+            this.text = text;
+            
+            List<String> literalList = new ArrayList<>();
+            List<String> nameList = new ArrayList<>();
+            int start = 0;
+            int open;
+            while ((open = text.indexOf('{', start)) >= 0) {
+                int close = text.indexOf('}', open);
+                if (close < 0) {
+                    break;
+                }
+                literalList.add(text.substring(start, open));
+                nameList.add(text.substring(open + 1, close));
+                start = close + 1;
+            }
+            literalList.add(text.substring(start));
+            literals = literalList.toArray(new String[0]);
+            names = nameList.toArray(new String[0]);
+            
+            int septets = 0;
+            for (String literal : literals) {
+                int literalCount = SmsEncodingPlanner.gsm7Septets(literal);
+                if (literalCount < 0) {
+                    septets = -1;
+                    break;
+                }
+                septets += literalCount;
+            }
+            literalSeptets = septets;
+        }
+        
+        /**
+         * Fills the placeholders; null if a param is missing, since the text would be incomplete
+         */
+        public Rendered render(JSONObject params) {
+            StringBuilder sb = new StringBuilder(text.length() + 32);
+            int septets = literalSeptets;
+            for (int i = 0; i < names.length; i++) {
+                sb.append(literals[i]);
+                if (params == null || params.isNull(names[i])) {
+                    return null;
+                }
+                String value = params.optString(names[i]);
+                sb.append(value);
+                if (septets >= 0) {
+                    int valueSeptets = SmsEncodingPlanner.gsm7Septets(value);
+                    septets = valueSeptets >= 0 ? septets + valueSeptets : -1;
+                }
+            }
+            sb.append(literals[names.length]);
+            return new Rendered(sb.toString(), septets);
+        }
+    }
+    
+    public static class Rendered {
+        public final String text;
+        public final int septets;   // GSM-7 septets, -1 if the text needs a full encoding plan
+        
+        Rendered(String text, int septets) {
+            this.text = text;
+            this.septets = septets;
+        }
+    }
+    
+    private static TemplateCache instance;
+    
+    private final SharedPreferences prefs;
+    private final Map<String, Template> templates;
+    
+    private TemplateCache(Context context, final int maxSize) {
+        prefs = context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        templates = new LinkedHashMap<String, Template>(maxSize, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Template> eldest) {
+                if (size() > maxSize) {
+                    prefs.edit().remove(eldest.getKey()).apply();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+    
+    public static synchronized TemplateCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new TemplateCache(context, AppConfig.TEMPLATE_CACHE_SIZE);
+        }
+        return instance;
+    }
+    
+    /**
+     * Cached template at or above the version, or null if it has to be fetched
+     */
+    public synchronized Template get(String id, int minVersion) {
+        Template template = load(id);
+        return template != null && template.version >= minVersion ? template : null;
+    }
+    
+    /**
+     * Cached template of exactly this version, or null
+     */
+    public synchronized Template getExact(String id, int version) {
+        Template template = load(id);
+        return template != null && template.version == version ? template : null;
+    }
+    
+    private Template load(String id) {
+        Template template = templates.get(id);
+        if (template == null) {
+            String stored = prefs.getString(id, null);
+            if (stored != null) {
+                try {
+                    JSONObject json = new JSONObject(stored);
+                    template = new Template(id, json.optInt("version", 0), json.getString("text"));
+                    templates.put(id, template);
+                } catch (Exception e) {
+                    prefs.edit().remove(id).apply();
+                }
+            }
+        }
+        return template;
+    }
+    
+    /**
+     * Stores a template fetched from the server ({"template_id", "version", "text"})
+     */
+    public synchronized Template put(JSONObject json) throws JSONException {
+        Template template = new Template(json.getString("template_id"), json.optInt("version", 0), json.getString("text"));
+        templates.put(template.id, template);
+        
+        JSONObject stored = new JSONObject();
+        stored.put("version", template.version);
+        stored.put("text", template.text);
+        prefs.edit().putString(template.id, stored.toString()).apply();
+        return template;
+    }
+    
+    public synchronized int size() {
+        return templates.size();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,123 @@
+package com.example.smssender;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hashed timing wheel for in-flight SMS expiry
+ *
+ * Timeouts hash into a fixed ring of slots by their deadline tick and sit in
+ * a doubly linked list per slot, so scheduling and cancelling are O(1). One
+ * periodic tick advances the wheel and collects everything that expired,
+ * instead of one Handler callback per message. Deadlines further out than one
+ * revolution simply stay in their slot until their tick comes round.
+ */
+public class TimingWheel<T> {
+    
+    public static class Timeout<T> {
+        final T item;
+        final long deadlineTick;
+        Timeout<T> prev;
+        Timeout<T> next;
+        int slot = -1;          // -1 once expired or cancelled
+        
+        Timeout(T item, long deadlineTick) {
+            this.item = item;
+            this.deadlineTick = deadlineTick;
+        }
+    }
+    
+    private final long tickMs;
+    private final int mask;
+    private final Timeout<T>[] heads;
+    private final long startTime;
+    private long currentTick = 0;
+    private int size = 0;
+    
+    /**
+     * @param tickMs resolution of the wheel
+     * @param slots number of slots, rounded up to a power of two
+     * @param now current time on the clock later passed to advance()
+     */
+    @SuppressWarnings("unchecked")
+    public TimingWheel(long tickMs, int slots, long now) {
+        int size = Integer.highestOneBit(Math.max(1, slots - 1)) << 1;
+        this.tickMs = tickMs;
+        this.mask = size - 1;
+        this.heads = new Timeout[size];
+        this.startTime = now;
+    }
+    
+    public synchronized Timeout<T> schedule(T item, long delayMs, long now) {
+        // Round up so an item never expires before its delay
+        long deadlineTick = Math.max((now - startTime + delayMs + tickMs - 1) / tickMs, currentTick + 1);
+        Timeout<T> timeout = new Timeout<>(item, deadlineTick);
+        int slot = (int) (deadlineTick & mask);
+        timeout.slot = slot;
+        timeout.next = heads[slot];
+        if (heads[slot] != null) {
+            heads[slot].prev = timeout;
+        }
+        heads[slot] = timeout;
+        size++;
+        return timeout;
+    }
+    
+    /**
+     * Removes a pending timeout; returns false if it already expired or was cancelled
+     */
+    public synchronized boolean cancel(Timeout<T> timeout) {
+        if (timeout == null || timeout.slot < 0) {
+            return false;
+        }
+        unlink(timeout);
+        return true;
+    }
+    
+    /**
+     * Moves the wheel up to now and returns the items whose deadline has passed
+     */
+    public synchronized List<T> advance(long now) {
+        List<T> expired = new ArrayList<>();
+        long targetTick = (now - startTime) / tickMs;
+        if (targetTick <= currentTick) {
+            return expired;
+        }
+        
+        // After a long stall one full revolution visits every slot
+        long ticks = Math.min(targetTick - currentTick, heads.length);
+        for (long i = 1; i <= ticks; i++) {
+            int slot = (int) ((currentTick + i) & mask);
+            Timeout<T> timeout = heads[slot];
+            while (timeout != null) {
+                Timeout<T> next = timeout.next;
+                if (timeout.deadlineTick <= targetTick) {
+                    unlink(timeout);
+                    expired.add(timeout.item);
+                }
+                timeout = next;
+            }
+        }
+        currentTick = targetTick;
+        return expired;
+    }
+    
+    public synchronized int size() {
+        return size;
+    }
+    
+    private void unlink(Timeout<T> timeout) {
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            heads[timeout.slot] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.prev = null;
+        timeout.next = null;
+        timeout.slot = -1;
+        size--;
+    }
+}
\ No newline at end of file
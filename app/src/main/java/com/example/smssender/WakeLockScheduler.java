@@ -0,0 +1,172 @@
+package com.example.smssender;
+
+import android.content.Context;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.util.Log;
+import org.json.JSONObject;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Burst-scoped wake lock
+ *
+ * The CPU is kept awake only while at least one probe, dispatch or upload
+ * burst is running, and every acquire carries a timeout so a lost end() can
+ * never pin the CPU. Wake-held time is accounted per task type.
+ */
+public class WakeLockScheduler {
+    
+    private static final String TAG = "WakeLockScheduler";
+    
+    public static final String TASK_PROBE = "probe";
+    public static final String TASK_DISPATCH = "dispatch";
+    public static final String TASK_STATUS_UPLOAD = "status_upload";
+    public static final String TASK_REPLY_UPLOAD = "reply_upload";
+    
+    private static WakeLockScheduler instance;
+    
+    public static class Burst {
+        final String task;
+        final long startTime;
+        final int generation;
+        boolean ended = false;
+        
+        Burst(String task, long startTime, int generation) {
+            this.task = task;
+            this.startTime = startTime;
+            this.generation = generation;
+        }
+    }
+    
+    private final PowerManager.WakeLock wakeLock;
+    private final long timeoutMs;
+    private int activeBursts = 0;
+    // Bumped by releaseAll(); bursts from an earlier generation no longer count as active
+    private int generation = 0;
+    private long heldSince = 0;
+    private long totalHeldMs = 0;
+    
+    // Per task: [0] = wake-held milliseconds, [1] = number of bursts
+    private final Map<String, long[]> taskStats = new HashMap<>();
+    
+    private WakeLockScheduler(Context context) {
+        PowerManager powerManager = (PowerManager) context.getApplicationContext()
+            .getSystemService(Context.POWER_SERVICE);
+        wakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "SmsProbeService::BurstWakeLock");
+        wakeLock.setReferenceCounted(false);
+        timeoutMs = AppConfig.WAKE_LOCK_BURST_TIMEOUT;
+    }
+    
+    public static synchronized WakeLockScheduler getInstance(Context context) {
+        if (instance == null) {
+            instance = new WakeLockScheduler(context);
+        }
+        return instance;
+    }
+    
+    /**
+     * Starts a burst, acquiring (or extending) the wake lock with a timeout
+     */
+    public synchronized Burst begin(String task) {
+        long now = SystemClock.elapsedRealtime();
+        try {
+            wakeLock.acquire(timeoutMs);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to acquire wake lock: " + e.getMessage());
+        }
+        if (activeBursts++ == 0) {
+            heldSince = now;
+        }
+        return new Burst(task, now, generation);
+    }
+    
+    /**
+     * Ends a burst; the wake lock is released once no burst is active
+     */
+    public synchronized void end(Burst burst) {
+        if (burst == null || burst.ended) {
+            return;
+        }
+        burst.ended = true;
+        if (burst.generation != generation) {
+            // Already dropped by releaseAll(); the lock it held is gone
+            return;
+        }
+        
+        long now = SystemClock.elapsedRealtime();
+        long[] stats = taskStats.get(burst.task);
+        if (stats == null) {
+            stats = new long[2];
+            taskStats.put(burst.task, stats);
+        }
+        stats[0] += now - burst.startTime;
+        stats[1]++;
+        
+        if (activeBursts > 0 && --activeBursts == 0) {
+            totalHeldMs += now - heldSince;
+            releaseLock();
+        }
+    }
+    
+    /**
+     * Drops all active bursts and releases the wake lock (service shutdown)
+     * Bursts still running end without effect; bursts begun afterwards count as usual.
+     */
+    public synchronized void releaseAll() {
+        if (activeBursts > 0) {
+            totalHeldMs += SystemClock.elapsedRealtime() - heldSince;
+            activeBursts = 0;
+        }
+        generation++;
+        releaseLock();
+    }
+    
+    public synchronized long getWakeHeldMs(String task) {
+        long[] stats = taskStats.get(task);
+        return stats != null ? stats[0] : 0;
+    }
+    
+    public synchronized long getTotalWakeHeldMs() {
+        return totalHeldMs;
+    }
+    
+    /**
+     * Compact per-task summary for request headers: "total=1200;probe=800/12;dispatch=400/3"
+     */
+    public synchronized String toHeaderValue() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("total=").append(totalHeldMs);
+        for (Map.Entry<String, long[]> entry : taskStats.entrySet()) {
+            sb.append(';').append(entry.getKey()).append('=')
+              .append(entry.getValue()[0]).append('/').append(entry.getValue()[1]);
+        }
+        return sb.toString();
+    }
+    
+    public synchronized JSONObject toJson() {
+        JSONObject json = new JSONObject();
+        try {
+            json.put("total_wake_ms", totalHeldMs);
+            for (Map.Entry<String, long[]> entry : taskStats.entrySet()) {
+                JSONObject task = new JSONObject();
+                task.put("wake_ms", entry.getValue()[0]);
+                task.put("bursts", entry.getValue()[1]);
+                json.put(entry.getKey(), task);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error building wake stats: " + e.getMessage());
+        }
+        return json;
+    }
+    
+    private void releaseLock() {
+        try {
+            if (wakeLock.isHeld()) {
+                wakeLock.release();
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to release wake lock: " + e.getMessage());
+        }
+    }
+}
\ No newline at end of file
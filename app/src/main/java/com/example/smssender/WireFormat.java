@@ -0,0 +1,395 @@
+package com.example.smssender;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Negotiated wire encoding for device-server traffic
+ *
+ * Bodies are CBOR with well-known keys (tasks, status updates, replies, sync
+ * and lease messages) replaced by small integers from a shared dictionary,
+ * so repeated keys cost one byte instead of the quoted name. Every request
+ * advertises CBOR in Accept; request bodies to an endpoint switch to CBOR
+ * only after that endpoint (host and path) has answered in CBOR, and a 415
+ * switches it back to JSON, so a prober and a template or push endpoint
+ * served by different backends are negotiated separately. The rest of the
+ * app keeps working on org.json objects.
+ */
+public class WireFormat {
+    
+    public static final String CONTENT_TYPE_JSON = "application/json";
+    public static final String CONTENT_TYPE_CBOR = "application/cbor; dict=1";
+    private static final String ACCEPT = "application/cbor; dict=1, application/json;q=0.9";
+    
+    // Dictionary version 1 - append only, the index is the wire key
+    private static final String[] KEYS = {
+        "queue_id", "phone", "message", "shipment_id", "status", "sms_sent", "error_code",
+        "sent_timestamp", "delivered_timestamp", "delivery_time_seconds", "segments", "segments_saved",
+        "segment_sent_ms", "segment_delivered_ms", "priority", "encoding",
+        "phone_from", "phone_to", "received_timestamp", "original_queue_id", "original_message",
+        "original_sent_timestamp", "reply_type", "device_info", "android_version", "app_version", "device_id",
+        "lease_id", "lease_until", "lease_seconds", "leases", "action",
+        "statuses", "replies", "tasks", "fetch", "max_tasks",
+        "template_id", "template_version", "params"
+    };
+    private static final Map<String, Integer> KEY_INDEX = new HashMap<>();
+    
+    static {
+        for (int i = 0; i < KEYS.length; i++) {
+            KEY_INDEX.put(KEYS[i], i);
+        }
+    }
+    
+    // Marks the end of an indefinite-length CBOR item
+    private static final Object BREAK = new Object();
+    
+    // Endpoints (host and path) that have answered in CBOR
+    private static final Map<String, Boolean> binaryAccepted = new ConcurrentHashMap<>();
+    
+    /**
+     * Advertises both encodings; call on every request to the server
+     */
+    public static void addAcceptHeader(HttpURLConnection connection) {
+        if (AppConfig.ENABLE_BINARY_WIRE) {
+            connection.setRequestProperty("Accept", ACCEPT);
+        }
+    }
+    
+    /**
+     * Writes a JSONObject or JSONArray body in the negotiated encoding
+     */
+    public static void writeBody(HttpURLConnection connection, Object json) throws IOException {
+        byte[] body;
+        if (AppConfig.ENABLE_BINARY_WIRE && binaryAccepted.containsKey(endpointOf(connection))) {
+            connection.setRequestProperty("Content-Type", CONTENT_TYPE_CBOR);
+            body = encode(json);
+        } else {
+            connection.setRequestProperty("Content-Type", CONTENT_TYPE_JSON);
+            body = json.toString().getBytes("UTF-8");
+        }
+        OutputStream os = connection.getOutputStream();
+        os.write(body);
+        os.flush();
+        os.close();
+    }
+    
+    /**
+     * Reads a response body that holds a JSON object; an empty body reads as an empty object
+     * CBOR responses decode straight into the JSONObject without a round trip through
+     * JSON text. Also updates the negotiated request encoding from the response.
+     */
+    public static JSONObject readObject(HttpURLConnection connection, InputStream in) throws IOException, JSONException {
+        boolean binary = noteResponse(connection);
+        byte[] bytes = readAll(in);
+        if (binary) {
+            Object value = bytes.length > 0 ? decode(bytes) : new JSONObject();
+            if (!(value instanceof JSONObject)) {
+                throw new JSONException("Expected a CBOR map, got " + value);
+            }
+            return (JSONObject) value;
+        }
+        String text = new String(bytes, "UTF-8");
+        return text.trim().isEmpty() ? new JSONObject() : new JSONObject(text);
+    }
+    
+    /**
+     * Reads a response body as JSON text, decoding CBOR responses, for logging
+     * Also updates the negotiated request encoding from the response.
+     */
+    public static String readBody(HttpURLConnection connection, InputStream in) throws IOException {
+        boolean binary = noteResponse(connection);
+        byte[] bytes = readAll(in);
+        if (binary) {
+            return bytes.length > 0 ? String.valueOf(decode(bytes)) : "";
+        }
+        return new String(bytes, "UTF-8");
+    }
+    
+    /**
+     * Updates the negotiated encoding from a response; true if its body is CBOR
+     */
+    public static boolean noteResponse(HttpURLConnection connection) throws IOException {
+        if (connection.getResponseCode() == 415) {
+            // Endpoint refused our CBOR body
+            binaryAccepted.remove(endpointOf(connection));
+            return false;
+        }
+        String contentType = connection.getContentType();
+        if (contentType != null && contentType.startsWith("application/cbor")) {
+            binaryAccepted.put(endpointOf(connection), Boolean.TRUE);
+            return true;
+        }
+        return false;
+    }
+    
+    // Query strings (e.g. template ids) don't change what the endpoint speaks
+    private static String endpointOf(HttpURLConnection connection) {
+        URL url = connection.getURL();
+        return url.getAuthority() + url.getPath();
+    }
+    
+    public static byte[] encode(Object value) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        writeValue(out, value);
+        return out.toByteArray();
+    }
+    
+    private static void writeValue(ByteArrayOutputStream out, Object value) {
+        if (value == null || value == JSONObject.NULL) {
+            out.write(0xF6);
+        } else if (value instanceof JSONObject) {
+            JSONObject object = (JSONObject) value;
+            writeHead(out, 5, object.length());
+            Iterator<String> names = object.keys();
+            while (names.hasNext()) {
+                String name = names.next();
+                Integer index = KEY_INDEX.get(name);
+                if (index != null) {
+                    writeHead(out, 0, index);
+                } else {
+                    writeText(out, name);
+                }
+                writeValue(out, object.opt(name));
+            }
+        } else if (value instanceof JSONArray) {
+            JSONArray array = (JSONArray) value;
+            writeHead(out, 4, array.length());
+            for (int i = 0; i < array.length(); i++) {
+                writeValue(out, array.opt(i));
+            }
+        } else if (value instanceof String) {
+            writeText(out, (String) value);
+        } else if (value instanceof Boolean) {
+            out.write((Boolean) value ? 0xF5 : 0xF4);
+        } else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            long n = ((Number) value).longValue();
+            if (n >= 0) {
+                writeHead(out, 0, n);
+            } else {
+                writeHead(out, 1, -1 - n);
+            }
+        } else if (value instanceof Number) {
+            out.write(0xFB);
+            long bits = Double.doubleToLongBits(((Number) value).doubleValue());
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                out.write((int) (bits >>> shift));
+            }
+        } else {
+            writeText(out, value.toString());
+        }
+    }
+    
+    private static void writeText(ByteArrayOutputStream out, String text) {
+        byte[] bytes;
+        try {
+            bytes = text.getBytes("UTF-8");
+        } catch (IOException e) {
+            bytes = text.getBytes();
+        }
+        writeHead(out, 3, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+    
+    private static void writeHead(ByteArrayOutputStream out, int major, long n) {
+        int type = major << 5;
+        if (n < 24) {
+            out.write(type | (int) n);
+        } else if (n < 0x100) {
+            out.write(type | 24);
+            out.write((int) n);
+        } else if (n < 0x10000) {
+            out.write(type | 25);
+            out.write((int) (n >>> 8));
+            out.write((int) n);
+        } else if (n < 0x100000000L) {
+            out.write(type | 26);
+            for (int shift = 24; shift >= 0; shift -= 8) {
+                out.write((int) (n >>> shift));
+            }
+        } else {
+            out.write(type | 27);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                out.write((int) (n >>> shift));
+            }
+        }
+    }
+    
+    public static Object decode(byte[] bytes) throws IOException {
+        int[] position = {0};
+        Object value = readValue(bytes, position);
+        if (value == BREAK) {
+            throw new IOException("Unexpected CBOR break");
+        }
+        return value;
+    }
+    
+    private static Object readValue(byte[] in, int[] pos) throws IOException {
+        int initial = readByte(in, pos);
+        int major = initial >>> 5;
+        int info = initial & 0x1F;
+        
+        if (major == 7) {
+            switch (info) {
+                case 20: return Boolean.FALSE;
+                case 21: return Boolean.TRUE;
+                case 22:
+                case 23: return JSONObject.NULL;
+                case 25: return (double) halfToFloat((int) readUint(in, pos, 2));
+                case 26: return (double) Float.intBitsToFloat((int) readUint(in, pos, 4));
+                case 27: return Double.longBitsToDouble(readUint(in, pos, 8));
+                case 31: return BREAK;
+                default: throw new IOException("Unsupported CBOR simple value " + info);
+            }
+        }
+        
+        boolean indefinite = info == 31;
+        long n = indefinite ? -1 : readArgument(in, pos, info);
+        if (indefinite && major <= 1) {
+            throw new IOException("Indefinite CBOR integer");
+        }
+        try {
+            switch (major) {
+                case 0:
+                    return n <= Integer.MAX_VALUE ? (Object) (int) n : (Object) n;
+                case 1:
+                    long negative = -1 - n;
+                    return negative >= Integer.MIN_VALUE ? (Object) (int) negative : (Object) negative;
+                case 2:
+                case 3:
+                    return readString(in, pos, major, n);
+                case 4: {
+                    JSONArray array = new JSONArray();
+                    for (long i = 0; indefinite || i < n; i++) {
+                        Object item = readValue(in, pos);
+                        if (item == BREAK) {
+                            break;
+                        }
+                        array.put(item);
+                    }
+                    return array;
+                }
+                case 5: {
+                    JSONObject object = new JSONObject();
+                    for (long i = 0; indefinite || i < n; i++) {
+                        Object key = readValue(in, pos);
+                        if (key == BREAK) {
+                            break;
+                        }
+                        String name = key instanceof Integer && (Integer) key >= 0 && (Integer) key < KEYS.length
+                            ? KEYS[(Integer) key] : String.valueOf(key);
+                        object.put(name, readValue(in, pos));
+                    }
+                    return object;
+                }
+                case 6:
+                    // Tags carry no meaning for this protocol; return the tagged value
+                    return readValue(in, pos);
+                default:
+                    throw new IOException("Unsupported CBOR major type " + major);
+            }
+        } catch (org.json.JSONException e) {
+            throw new IOException("Invalid CBOR value: " + e.getMessage());
+        }
+    }
+    
+    private static String readString(byte[] in, int[] pos, int major, long n) throws IOException {
+        if (n >= 0) {
+            if (n > in.length - pos[0]) {
+                throw new IOException("Truncated CBOR string");
+            }
+            String text = new String(in, pos[0], (int) n, "UTF-8");
+            pos[0] += (int) n;
+            return text;
+        }
+        // Indefinite length: definite-length chunks of the same type up to a break
+        StringBuilder sb = new StringBuilder();
+        while (true) {
+            if (pos[0] < in.length && (in[pos[0]] & 0xFF) == 0xFF) {
+                pos[0]++;
+                return sb.toString();
+            }
+            int initial = readByte(in, pos);
+            if (initial >>> 5 != major) {
+                throw new IOException("Bad CBOR string chunk");
+            }
+            sb.append(readString(in, pos, major, readArgument(in, pos, initial & 0x1F)));
+        }
+    }
+    
+    private static long readArgument(byte[] in, int[] pos, int info) throws IOException {
+        if (info < 24) {
+            return info;
+        }
+        switch (info) {
+            case 24: return readUint(in, pos, 1);
+            case 25: return readUint(in, pos, 2);
+            case 26: return readUint(in, pos, 4);
+            case 27: {
+                // 2^63 and up would read as negative; no field of this protocol needs them
+                long value = readUint(in, pos, 8);
+                if (value < 0) {
+                    throw new IOException("CBOR argument out of range");
+                }
+                return value;
+            }
+            default: throw new IOException("Bad CBOR argument " + info);
+        }
+    }
+    
+    private static long readUint(byte[] in, int[] pos, int size) throws IOException {
+        long value = 0;
+        for (int i = 0; i < size; i++) {
+            value = (value << 8) | readByte(in, pos);
+        }
+        return value;
+    }
+    
+    private static int readByte(byte[] in, int[] pos) throws IOException {
+        if (pos[0] >= in.length) {
+            throw new IOException("Truncated CBOR data");
+        }
+        return in[pos[0]++] & 0xFF;
+    }
+    
+    private static float halfToFloat(int half) {
+        int exponent = (half >>> 10) & 0x1F;
+        int mantissa = half & 0x3FF;
+        float value;
+        if (exponent == 0) {
+            value = mantissa * (float) Math.pow(2, -24);
+        } else if (exponent == 31) {
+            value = mantissa == 0 ? Float.POSITIVE_INFINITY : Float.NaN;
+        } else {
+            value = (mantissa + 1024) * (float) Math.pow(2, exponent - 25);
+        }
+        return (half & 0x8000) != 0 ? -value : value;
+    }
+    
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (in == null) {
+            return out.toByteArray();
+        }
+        byte[] buffer = new byte[4096];
+        int read;
+        try {
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+        return out.toByteArray();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,154 @@
+package com.example.smssender;
+
+import android.os.Handler;
+import org.junit.Test;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Concurrent fetch and dispatch over DispatchState
+ *
+ * Fetch threads hold and enqueue tasks as processSmsRequest() does while
+ * dispatch workers take the next task, finish it and count the outcome, as
+ * sendNextQueuedSms() and the result receivers do. Every task must be
+ * dispatched and finished exactly once and every counter must match,
+ * whatever the fetch concurrency.
+ */
+public class DispatchStateStressTest {
+    
+    private static final int TASKS_PER_FETCHER = 5000;
+    private static final int DISPATCH_WORKERS = 4;
+    
+    @Test
+    public void noLostUpdatesWhileScalingFetchConcurrency() throws Exception {
+        for (int fetchers = 1; fetchers <= 8; fetchers *= 2) {
+            runRound(fetchers);
+        }
+    }
+    
+    @Test
+    public void statisticsCountersAreExactUnderContention() throws Exception {
+        final StatisticsPublisher statistics = newPublisher();
+        final int threads = 8;
+        final int perThread = 20000;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        final CountDownLatch start = new CountDownLatch(1);
+        for (int t = 0; t < threads; t++) {
+            pool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    await(start);
+                    for (int i = 0; i < perThread; i++) {
+                        statistics.recordSent();
+                        statistics.recordDelivered();
+                        if (i % 10 == 0) {
+                            statistics.recordFailed();
+                        }
+                    }
+                }
+            });
+        }
+        start.countDown();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(60, TimeUnit.SECONDS));
+        
+        StatisticsPublisher.Snapshot snapshot = statistics.getSnapshot();
+        assertEquals(threads * perThread, snapshot.sent);
+        assertEquals(threads * perThread, snapshot.delivered);
+        assertEquals(threads * (perThread / 10), snapshot.failed);
+    }
+    
+    private void runRound(final int fetchers) throws Exception {
+        final int total = fetchers * TASKS_PER_FETCHER;
+        final DispatchState<Integer> state = new DispatchState<>(AppConfig.PRIORITY_MAX_WAIT, AppConfig.PRIORITY_FAIRNESS_RATIO);
+        final StatisticsPublisher statistics = newPublisher();
+        final AtomicIntegerArray dispatched = new AtomicIntegerArray(total);
+        final AtomicInteger fetched = new AtomicInteger();
+        final AtomicInteger finished = new AtomicInteger();
+        final AtomicInteger finishedTwice = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        
+        ExecutorService pool = Executors.newFixedThreadPool(fetchers + DISPATCH_WORKERS);
+        for (int f = 0; f < fetchers; f++) {
+            final int base = f * TASKS_PER_FETCHER;
+            pool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    await(start);
+                    for (int i = 0; i < TASKS_PER_FETCHER; i++) {
+                        int queueId = base + i;
+                        state.hold(queueId, queueId);
+                        state.enqueue(queueId, queueId % 3);
+                        fetched.incrementAndGet();
+                    }
+                }
+            });
+        }
+        for (int w = 0; w < DISPATCH_WORKERS; w++) {
+            pool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    await(start);
+                    while (finished.get() < total) {
+                        Integer queueId = state.next();
+                        if (queueId == null) {
+                            Thread.yield();
+                            continue;
+                        }
+                        dispatched.incrementAndGet(queueId);
+                        if (!state.isHeld(queueId) || !queueId.equals(state.finish(queueId))) {
+                            finishedTwice.incrementAndGet();
+                        }
+                        if (queueId % 7 == 0) {
+                            statistics.recordFailed();
+                        } else {
+                            statistics.recordSent();
+                        }
+                        finished.incrementAndGet();
+                    }
+                }
+            });
+        }
+        start.countDown();
+        pool.shutdown();
+        assertTrue("Round with " + fetchers + " fetchers timed out", pool.awaitTermination(60, TimeUnit.SECONDS));
+        
+        assertEquals(total, fetched.get());
+        assertEquals(total, finished.get());
+        assertEquals(0, finishedTwice.get());
+        for (int i = 0; i < total; i++) {
+            assertEquals("Dispatch count of task " + i, 1, dispatched.get(i));
+        }
+        assertEquals(0, state.size());
+        assertEquals(0, state.queued());
+        assertNull(state.finish(0));
+        StatisticsPublisher.Snapshot snapshot = statistics.getSnapshot();
+        assertEquals(total, snapshot.sent + snapshot.failed);
+        assertEquals((total + 6) / 7, snapshot.failed);
+    }
+    
+    private static StatisticsPublisher newPublisher() {
+        // Publishing is not under test; the handler is a no-op on the JVM
+        return new StatisticsPublisher(new Handler(), Long.MAX_VALUE, new StatisticsPublisher.Listener() {
+            @Override
+            public void onStatisticsPublished(StatisticsPublisher.Snapshot snapshot) {
+            }
+        });
+    }
+    
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
\ No newline at end of file
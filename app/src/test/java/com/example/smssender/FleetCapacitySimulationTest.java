@@ -0,0 +1,245 @@
+package com.example.smssender;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Several phones sharing one prober, simulated on a virtual clock
+ *
+ * Each device pairs a LeaseTracker and an AdmissionController and asks for
+ * as many tasks as SmsProbeService.freeCapacity() allows, the way the probe
+ * does. The stand-in server leases tasks and hands expired leases to the
+ * next device that asks. One device is wedged at the start, so its leases
+ * lapse and its queue must be dropped rather than sent twice.
+ */
+public class FleetCapacitySimulationTest {
+    
+    private static final long TICK_MS = 1000;
+    private static final long LEASE_MS = 60 * 1000;
+    private static final int TASKS = 600;
+    private static final int SENDS_PER_TICK = 2;
+    private static final int ACK_TICKS = 2;
+    
+    private static class Server {
+        final ArrayDeque<Integer> available = new ArrayDeque<>();
+        final Map<Integer, Long> leased = new HashMap<>();
+        final int[] completed = new int[TASKS];
+        int reissued = 0;
+        
+        Server() {
+            for (int i = 0; i < TASKS; i++) {
+                available.add(i);
+            }
+        }
+        
+        List<JSONObject> lease(int max, long now) throws Exception {
+            Iterator<Map.Entry<Integer, Long>> it = leased.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<Integer, Long> entry = it.next();
+                if (entry.getValue() <= now) {
+                    it.remove();
+                    available.addFirst(entry.getKey());
+                    reissued++;
+                }
+            }
+            List<JSONObject> tasks = new ArrayList<>();
+            while (tasks.size() < max && !available.isEmpty()) {
+                int queueId = available.poll();
+                leased.put(queueId, now + LEASE_MS);
+                JSONObject task = new JSONObject();
+                task.put("queue_id", queueId);
+                task.put("lease_id", "L" + queueId);
+                task.put("lease_until", now + LEASE_MS);
+                tasks.add(task);
+            }
+            return tasks;
+        }
+        
+        void complete(int queueId) {
+            leased.remove(queueId);
+            completed[queueId]++;
+        }
+        
+        boolean done() {
+            return available.isEmpty() && leased.isEmpty();
+        }
+    }
+    
+    private static class Device {
+        final LeaseTracker leases = new LeaseTracker(AppConfig.SMS_QUOTA_COUNT, AppConfig.SMS_QUOTA_WINDOW);
+        final AdmissionController admission = new AdmissionController(AppConfig.ADMISSION_HIGH_SENDS,
+            AppConfig.ADMISSION_LOW_SENDS, AppConfig.ADMISSION_HIGH_SEGMENTS, AppConfig.ADMISSION_LOW_SEGMENTS);
+        final ArrayDeque<Integer> queued = new ArrayDeque<>();
+        final Map<Integer, Long> sentAt = new HashMap<>();
+        final long wedgedUntil;
+        int pending = 0;
+        int sent = 0;
+        int expired = 0;
+        
+        Device(long wedgedUntil) {
+            this.wedgedUntil = wedgedUntil;
+        }
+        
+        int freeCapacity() {
+            return SmsProbeService.freeCapacity(pending, admission.getFreeSlots());
+        }
+        
+        void tick(Server server, long now) throws Exception {
+            // SMS_SENT results for every segment, then the task is finished
+            Iterator<Map.Entry<Integer, Long>> it = sentAt.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<Integer, Long> entry = it.next();
+                if (now - entry.getValue() >= ACK_TICKS * TICK_MS) {
+                    int queueId = entry.getKey();
+                    for (int s = 0; s < segments(queueId); s++) {
+                        admission.onSegmentAcked(queueId, now);
+                    }
+                    it.remove();
+                    finish(queueId, now);
+                    server.complete(queueId);
+                }
+            }
+            
+            // The radio takes a few sends per tick once the device is no longer wedged
+            for (int n = 0; n < SENDS_PER_TICK && now >= wedgedUntil && !queued.isEmpty(); ) {
+                int queueId = queued.poll();
+                if (leases.isExpired(queueId, now)) {
+                    expired++;
+                    finish(queueId, now);
+                    continue;
+                }
+                admission.onSend(queueId, segments(queueId), now);
+                leases.recordSend(now);
+                sentAt.put(queueId, now);
+                sent++;
+                n++;
+            }
+            
+            // Probe: only while the gate is open and there is room
+            int free = freeCapacity();
+            if (!admission.isOpen()) {
+                assertEquals("Closed admission must report no capacity", 0, free);
+            }
+            if (admission.isOpen() && free > 0) {
+                for (JSONObject task : server.lease(free, now)) {
+                    int queueId = task.getInt("queue_id");
+                    leases.track(queueId, task, now);
+                    queued.add(queueId);
+                    pending++;
+                }
+            }
+            assertTrue("Device over its in-flight limit", pending <= AppConfig.DEVICE_MAX_IN_FLIGHT);
+        }
+        
+        private void finish(int queueId, long now) {
+            admission.release(queueId, now);
+            leases.release(queueId);
+            pending--;
+        }
+        
+        private static int segments(int queueId) {
+            return queueId % 3 + 1;
+        }
+    }
+    
+    @Test
+    public void fleetDrainsEveryTaskOnceAndIsNotCappedByTheQuota() throws Exception {
+        Server server = new Server();
+        Device[] devices = {
+            new Device(0),
+            new Device(0),
+            new Device(2 * LEASE_MS)   // wedged until its first leases have lapsed
+        };
+        
+        long now = TICK_MS;
+        while (!server.done()) {
+            assertTrue("Fleet did not drain", now < AppConfig.SMS_QUOTA_WINDOW);
+            for (Device device : devices) {
+                device.tick(server, now);
+            }
+            now += TICK_MS;
+        }
+        
+        for (int i = 0; i < TASKS; i++) {
+            assertEquals("Completions of task " + i, 1, server.completed[i]);
+        }
+        int sent = 0;
+        for (Device device : devices) {
+            sent += device.sent;
+            assertEquals(0, device.pending);
+            assertTrue(device.admission.isOpen());
+        }
+        assertEquals(TASKS, sent);
+        
+        // The wedged device dropped its lapsed tasks and the server handed them out again
+        assertEquals(AppConfig.DEVICE_MAX_IN_FLIGHT, devices[2].expired);
+        assertTrue(server.reissued >= devices[2].expired);
+        
+        // Healthy devices sent well past the premium-SMS quota within one window
+        for (int d = 0; d < 2; d++) {
+            assertTrue(devices[d].sent > AppConfig.SMS_QUOTA_COUNT);
+            assertEquals(0, devices[d].leases.getFreeQuota(now));
+            assertTrue("Spent quota must not block fetching", devices[d].freeCapacity() > 0);
+        }
+    }
+    
+    @Test
+    public void freeCapacityIgnoresTheQuotaAndHonoursAdmission() {
+        assertEquals(AppConfig.DEVICE_MAX_IN_FLIGHT, SmsProbeService.freeCapacity(0, Integer.MAX_VALUE));
+        assertEquals(5, SmsProbeService.freeCapacity(AppConfig.DEVICE_MAX_IN_FLIGHT - 5, Integer.MAX_VALUE));
+        assertEquals(3, SmsProbeService.freeCapacity(0, 3));
+        assertEquals(0, SmsProbeService.freeCapacity(0, 0));
+        assertEquals(0, SmsProbeService.freeCapacity(AppConfig.DEVICE_MAX_IN_FLIGHT + 2, 4));
+    }
+    
+    @Test
+    public void quotaCountsSendsInTheRollingWindow() {
+        LeaseTracker leases = new LeaseTracker(3, 1000);
+        assertEquals(3, leases.getFreeQuota(1));
+        leases.recordSend(100);
+        leases.recordSend(200);
+        assertEquals(1, leases.getFreeQuota(500));
+        leases.recordSend(600);
+        assertEquals(0, leases.getFreeQuota(700));
+        assertEquals(1, leases.getFreeQuota(1100));
+        assertEquals(3, leases.getFreeQuota(1600));
+    }
+    
+    @Test
+    public void leasesAreRenewedOrLapse() throws Exception {
+        LeaseTracker leases = new LeaseTracker(1, 1000);
+        leases.track(1, new JSONObject().put("lease_id", "a").put("lease_until", 10000L), 0);
+        leases.track(2, new JSONObject().put("lease_seconds", 5), 0);
+        leases.track(3, new JSONObject(), 0);
+        assertTrue(leases.hasLeases());
+        
+        JSONArray due = leases.getDueForRenewal(4000, 2000);
+        assertEquals(1, due.length());
+        assertEquals(2, due.getJSONObject(0).getInt("queue_id"));
+        assertEquals("2", due.getJSONObject(0).getString("lease_id"));
+        
+        JSONObject response = new JSONObject().put("leases", new JSONArray()
+            .put(new JSONObject().put("queue_id", 2).put("lease_until", 20000L))
+            .put(new JSONObject().put("queue_id", 1).put("lease_until", 5000L)));
+        assertEquals(1, leases.applyRenewals(response));
+        
+        assertFalse(leases.isExpired(2, 15000));
+        assertTrue(leases.isExpired(1, 15000));
+        assertFalse("Unleased tasks never expire", leases.isExpired(3, Long.MAX_VALUE));
+        
+        leases.release(1);
+        leases.release(2);
+        assertFalse(leases.hasLeases());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,265 @@
+package com.example.smssender;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * PushTaskClient against a loopback stand-in for the push endpoint
+ */
+public class PushTaskClientTest {
+    
+    private static final long WAIT_SECONDS = 5;
+    
+    /**
+     * Answers one accepted connection; the request head has already been read
+     */
+    private interface Responder {
+        void respond(int connection, OutputStream out) throws Exception;
+    }
+    
+    /**
+     * Minimal HTTP server: records each request head and hands the socket to the responder
+     */
+    private static class StandInServer {
+        final ServerSocket serverSocket;
+        final BlockingQueue<String> requests = new LinkedBlockingQueue<>();
+        final Thread thread;
+        volatile boolean closed = false;
+        
+        StandInServer(final Responder responder) throws IOException {
+            serverSocket = new ServerSocket(0, 10, InetAddress.getLoopbackAddress());
+            thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    int count = 0;
+                    while (!closed) {
+                        try {
+                            serve(serverSocket.accept(), count++, responder);
+                        } catch (IOException e) {
+                            // Server is closing
+                        }
+                    }
+                }
+            }, "StandInServer");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        
+        // Each connection gets its own thread so a held-open stream doesn't block the next one
+        private void serve(final Socket socket, final int connection, final Responder responder) {
+            Thread worker = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+                        StringBuilder head = new StringBuilder();
+                        String line;
+                        while ((line = reader.readLine()) != null && !line.isEmpty()) {
+                            head.append(line).append('\n');
+                        }
+                        requests.add(head.toString());
+                        responder.respond(connection, socket.getOutputStream());
+                    } catch (Exception e) {
+                        // Client went away
+                    } finally {
+                        try {
+                            socket.close();
+                        } catch (IOException e) {
+                            // Already closed
+                        }
+                    }
+                }
+            }, "StandInConnection-" + connection);
+            worker.setDaemon(true);
+            worker.start();
+        }
+        
+        String endpoint() {
+            return "http://127.0.0.1:" + serverSocket.getLocalPort() + "/api/sms/push.php";
+        }
+        
+        void close() throws IOException {
+            closed = true;
+            serverSocket.close();
+        }
+    }
+    
+    private final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+    private StandInServer server;
+    private PushTaskClient client;
+    
+    private final PushTaskClient.Listener listener = new PushTaskClient.Listener() {
+        @Override
+        public void onConnected() {
+            events.add("connected");
+        }
+        
+        @Override
+        public void onTask(String taskJson) {
+            events.add("task:" + taskJson);
+        }
+        
+        @Override
+        public void onDisconnected(String reason) {
+            events.add("disconnected:" + reason);
+        }
+    };
+    
+    @Before
+    public void setUp() {
+        events.clear();
+    }
+    
+    @After
+    public void tearDown() throws IOException {
+        if (client != null) {
+            client.stop();
+        }
+        if (server != null) {
+            server.close();
+        }
+    }
+    
+    @Test
+    public void streamsTaskEventsAndSkipsOtherEvents() throws Exception {
+        server = new StandInServer(new Responder() {
+            @Override
+            public void respond(int connection, OutputStream out) throws Exception {
+                writeStreamHead(out);
+                write(out, ": heartbeat\n\n");
+                write(out, "event: task\nid: 1\ndata: {\"queue_id\":1}\n\n");
+                write(out, "event: stats\ndata: ignored\n\n");
+                write(out, "data: {\"queue_id\":\ndata: 2}\n\n");
+                holdOpen();
+            }
+        });
+        client = new PushTaskClient(server.endpoint(), listener);
+        client.start();
+        
+        String request = server.requests.poll(WAIT_SECONDS, TimeUnit.SECONDS);
+        assertTrue(request, request.startsWith("GET /api/sms/push.php"));
+        assertTrue(request, request.contains("Accept: text/event-stream"));
+        assertTrue(request, request.contains("X-API-Key: " + AppConfig.API_KEY));
+        
+        assertEquals("connected", next());
+        assertEquals("task:{\"queue_id\":1}", next());
+        assertEquals("task:{\"queue_id\":\n2}", next());
+        assertTrue(client.isConnected());
+    }
+    
+    @Test
+    public void reconnectsAfterCloseAndResumesFromLastEventId() throws Exception {
+        server = new StandInServer(new Responder() {
+            @Override
+            public void respond(int connection, OutputStream out) throws Exception {
+                writeStreamHead(out);
+                if (connection == 0) {
+                    write(out, "id: 41\ndata: {\"queue_id\":41}\n\n");
+                    // Closing the socket ends the stream
+                    return;
+                }
+                write(out, "id: 42\ndata: {\"queue_id\":42}\n\n");
+                holdOpen();
+            }
+        });
+        client = new PushTaskClient(server.endpoint(), listener);
+        client.start();
+        
+        assertEquals("connected", next());
+        assertEquals("task:{\"queue_id\":41}", next());
+        assertEquals("disconnected:closed by server", next());
+        assertEquals("connected", next());
+        assertEquals("task:{\"queue_id\":42}", next());
+        
+        server.requests.poll(WAIT_SECONDS, TimeUnit.SECONDS);
+        String reconnect = server.requests.poll(WAIT_SECONDS, TimeUnit.SECONDS);
+        assertTrue(reconnect, reconnect.contains("Last-Event-ID: 41"));
+    }
+    
+    @Test
+    public void rejectedStreamIsRetriedWithoutReportingAConnection() throws Exception {
+        server = new StandInServer(new Responder() {
+            @Override
+            public void respond(int connection, OutputStream out) throws Exception {
+                if (connection == 0) {
+                    write(out, "HTTP/1.1 503 Service Unavailable\r\nContent-Length: 0\r\nConnection: close\r\n\r\n");
+                    return;
+                }
+                writeStreamHead(out);
+                write(out, "data: {\"queue_id\":7}\n\n");
+                holdOpen();
+            }
+        });
+        client = new PushTaskClient(server.endpoint(), listener);
+        client.start();
+        
+        // The rejected attempt never connected, so it reports neither a connection nor a disconnect
+        assertEquals("connected", next());
+        assertEquals("task:{\"queue_id\":7}", next());
+        assertEquals(2, server.requests.size());
+    }
+    
+    @Test
+    public void pauseClosesTheStreamUntilResumed() throws Exception {
+        server = new StandInServer(new Responder() {
+            @Override
+            public void respond(int connection, OutputStream out) throws Exception {
+                writeStreamHead(out);
+                write(out, "data: {\"queue_id\":" + connection + "}\n\n");
+                holdOpen();
+            }
+        });
+        client = new PushTaskClient(server.endpoint(), listener);
+        client.start();
+        assertEquals("connected", next());
+        assertEquals("task:{\"queue_id\":0}", next());
+        
+        client.pause();
+        assertEquals("disconnected:paused", next());
+        assertTrue(client.isPaused());
+        
+        // No reconnect while paused
+        server.requests.poll(WAIT_SECONDS, TimeUnit.SECONDS);
+        assertNull(server.requests.poll(2, TimeUnit.SECONDS));
+        assertNull(events.poll(100, TimeUnit.MILLISECONDS));
+        
+        client.resume();
+        assertEquals("connected", next());
+        assertEquals("task:{\"queue_id\":1}", next());
+    }
+    
+    private String next() throws InterruptedException {
+        String event = events.poll(WAIT_SECONDS, TimeUnit.SECONDS);
+        assertTrue("No event within " + WAIT_SECONDS + "s", event != null);
+        return event;
+    }
+    
+    private static void writeStreamHead(OutputStream out) throws IOException {
+        write(out, "HTTP/1.1 200 OK\r\nContent-Type: text/event-stream\r\nConnection: close\r\n\r\n");
+    }
+    
+    private static void write(OutputStream out, String text) throws IOException {
+        out.write(text.getBytes("UTF-8"));
+        out.flush();
+    }
+    
+    private static void holdOpen() throws InterruptedException {
+        // The client closes the socket when it stops or pauses; the server thread moves on then
+        Thread.sleep(WAIT_SECONDS * 2000);
+    }
+}
\ No newline at end of file
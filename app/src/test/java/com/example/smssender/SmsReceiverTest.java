@@ -0,0 +1,39 @@
+package com.example.smssender;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Reply classification, above all which replies count as opt-outs
+ */
+public class SmsReceiverTest {
+    
+    @Test
+    public void wholeReplyKeywordsOptOut() {
+        String[] optOuts = {"STOP", "stop", " Stop ", "STOP!", "stop.", "STOP ALL", "Unsubscribe", "ODJAVI", "odjavi",
+            "Prekini", "OTKAŽI", "otkazi"};
+        for (String reply : optOuts) {
+            assertEquals(reply, "opt_out", SmsReceiver.classifyReply(reply));
+        }
+    }
+    
+    @Test
+    public void ordinaryRepliesNeverOptOut() {
+        String[] replies = {"SEND", "See you at the weekend", "Status still PENDING", "When will it end?",
+            "don't cancel my delivery", "QUIT", "END", "CANCEL", "Please don't stop the delivery",
+            "stop by tomorrow", "Unstoppable", "Odjavite me sutra?"};
+        for (String reply : replies) {
+            assertFalse(reply, "opt_out".equals(SmsReceiver.classifyReply(reply)));
+        }
+    }
+    
+    @Test
+    public void otherTypesStillClassify() {
+        assertEquals("general_inquiry", SmsReceiver.classifyReply("When will it end?"));
+        assertEquals("delivery_confirmation", SmsReceiver.classifyReply("don't cancel, I RECEIVED it"));
+        assertEquals("reschedule_request", SmsReceiver.classifyReply("please deliver tomorrow"));
+        assertEquals("pin_confirmation", SmsReceiver.classifyReply("PIN 1234"));
+    }
+}
\ No newline at end of file
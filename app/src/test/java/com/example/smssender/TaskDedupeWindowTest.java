@@ -0,0 +1,144 @@
+package com.example.smssender;
+
+import android.content.SharedPreferences;
+import org.junit.Test;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Which re-issued tasks are sent again and which are answered with their last status
+ */
+public class TaskDedupeWindowTest {
+    
+    @Test
+    public void settledTasksAreNeverSentAgain() {
+        TaskDedupeWindow window = new TaskDedupeWindow(null, null, 16);
+        String[] settled = {"sent", "sent_unconfirmed", "delivered", "suppressed"};
+        for (int i = 0; i < settled.length; i++) {
+            assertNull(window.admit(i, false));
+            window.update(i, settled[i]);
+            assertEquals(settled[i], window.admit(i, false));
+        }
+    }
+    
+    @Test
+    public void heldTasksAreDuplicatesWhateverTheirStatus() {
+        TaskDedupeWindow window = new TaskDedupeWindow(null, null, 16);
+        assertNull(window.admit(1, false));
+        assertEquals("processing", window.admit(1, true));
+        window.update(1, "pending");
+        assertEquals("pending", window.admit(1, true));
+        window.update(1, "failed");
+        assertEquals("failed", window.admit(1, true));
+    }
+    
+    @Test
+    public void taskBeingPreparedIsNotAdmittedTwice() {
+        // Fetch and push can hand over the same task before either thread has queued it
+        TaskDedupeWindow window = new TaskDedupeWindow(null, null, 16);
+        assertNull(window.admit(1, false));
+        assertEquals("processing", window.admit(1, false));
+    }
+    
+    @Test
+    public void failedAndExpiredTasksAreRetried() {
+        TaskDedupeWindow window = new TaskDedupeWindow(null, null, 16);
+        assertNull(window.admit(1, false));
+        window.update(1, "failed");
+        assertNull(window.admit(1, false));
+        assertEquals("processing", window.admit(1, false));
+        
+        assertNull(window.admit(2, false));
+        window.update(2, "lease_expired");
+        assertNull(window.admit(2, false));
+        assertEquals(2, window.size());
+    }
+    
+    @Test
+    public void tasksLostInARestartAreRetried() {
+        Map<String, Object> store = new HashMap<>();
+        TaskDedupeWindow before = new TaskDedupeWindow(memoryPrefs(store), null, 16);
+        assertNull(before.admit(1, false));     // still queued when the process died
+        assertNull(before.admit(2, false));
+        before.update(2, "sent");
+        assertNull(before.admit(3, false));
+        before.update(3, "delivered");
+        before.flush();
+        
+        TaskDedupeWindow after = new TaskDedupeWindow(memoryPrefs(store), null, 16);
+        assertEquals(3, after.size());
+        assertNull(after.admit(1, false));
+        assertEquals("sent", after.admit(2, false));
+        assertEquals("delivered", after.admit(3, false));
+    }
+    
+    @Test
+    public void changesAreWrittenTogetherOnFlush() {
+        Map<String, Object> store = new HashMap<>();
+        TaskDedupeWindow window = new TaskDedupeWindow(memoryPrefs(store), null, 16);
+        for (int id = 0; id < 10; id++) {
+            assertNull(window.admit(id, false));
+            window.update(id, "sent");
+        }
+        assertTrue("Nothing is written before the flush", store.isEmpty());
+        
+        window.flush();
+        assertEquals(10, new TaskDedupeWindow(memoryPrefs(store), null, 16).size());
+        
+        // A flush with nothing changed writes nothing
+        store.clear();
+        window.flush();
+        assertTrue(store.isEmpty());
+    }
+    
+    @Test
+    public void oldestIdsDropOutWhenTheRingWraps() {
+        int capacity = 64;
+        TaskDedupeWindow window = new TaskDedupeWindow(null, null, capacity);
+        for (int id = 0; id < capacity * 5; id++) {
+            assertNull(window.admit(id * 7919, false));
+            window.update(id * 7919, "sent");
+        }
+        assertEquals(capacity, window.size());
+        // The newest ids are still known after the ring wrapped several times
+        for (int id = capacity * 4; id < capacity * 5; id++) {
+            assertEquals("Id " + id, "sent", window.admit(id * 7919, false));
+        }
+        assertNull("Evicted id", window.admit(0, false));
+        assertNull("Evicted id", window.admit((capacity * 4 - 1) * 7919, false));
+    }
+    
+    // Only getString() and edit().putString().apply() are used by the window
+    private static SharedPreferences memoryPrefs(final Map<String, Object> store) {
+        final SharedPreferences.Editor editor = (SharedPreferences.Editor) Proxy.newProxyInstance(
+            SharedPreferences.Editor.class.getClassLoader(), new Class<?>[] {SharedPreferences.Editor.class},
+            new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    if (method.getName().startsWith("put")) {
+                        store.put((String) args[0], args[1]);
+                    }
+                    return method.getReturnType() == boolean.class ? Boolean.TRUE
+                        : method.getReturnType() == void.class ? null : proxy;
+                }
+            });
+        return (SharedPreferences) Proxy.newProxyInstance(
+            SharedPreferences.class.getClassLoader(), new Class<?>[] {SharedPreferences.class},
+            new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    if (method.getName().equals("edit")) {
+                        return editor;
+                    }
+                    return store.containsKey((String) args[0]) ? store.get(args[0]) : args[1];
+                }
+            });
+    }
+}
\ No newline at end of file
@@ -0,0 +1,35 @@
+package com.example.smssender;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Template rendering, including params that are missing
+ */
+public class TemplateRenderTest {
+    
+    private final TemplateCache.Template template = new TemplateCache.Template("pin", 3, "Your code is {pin}, valid {minutes} min");
+    
+    @Test
+    public void fillsEveryPlaceholder() throws Exception {
+        TemplateCache.Rendered rendered = template.render(new JSONObject().put("pin", "0042").put("minutes", 10));
+        assertEquals("Your code is 0042, valid 10 min", rendered.text);
+        assertEquals(rendered.text.length(), rendered.septets);
+    }
+    
+    @Test
+    public void missingParamsFailTheRender() throws Exception {
+        assertNull(template.render(new JSONObject().put("pin", "0042")));
+        assertNull(template.render(new JSONObject().put("pin", "0042").put("minutes", JSONObject.NULL)));
+        assertNull(template.render(null));
+    }
+    
+    @Test
+    public void templateWithoutPlaceholdersNeedsNoParams() {
+        TemplateCache.Rendered rendered = new TemplateCache.Template("hi", 1, "Hello").render(null);
+        assertEquals("Hello", rendered.text);
+    }
+}
\ No newline at end of file
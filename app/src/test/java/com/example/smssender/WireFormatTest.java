@@ -0,0 +1,262 @@
+package com.example.smssender;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * CBOR codec round trips, malformed input, per-endpoint negotiation,
+ * response decoding, and the size of a typical status batch against JSON
+ */
+public class WireFormatTest {
+    
+    private static final int BATCH_STATUSES = 50;
+    
+    /**
+     * Connection that never touches the network; responses are set by the test
+     */
+    private static class FakeConnection extends HttpURLConnection {
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        int code = 200;
+        String contentType;
+        
+        FakeConnection(String url) throws IOException {
+            super(new URL(url));
+        }
+        
+        FakeConnection respond(int code, String contentType) {
+            this.code = code;
+            this.contentType = contentType;
+            return this;
+        }
+        
+        @Override
+        public OutputStream getOutputStream() {
+            return body;
+        }
+        
+        @Override
+        public int getResponseCode() {
+            return code;
+        }
+        
+        @Override
+        public String getContentType() {
+            return contentType;
+        }
+        
+        @Override
+        public void connect() {
+        }
+        
+        @Override
+        public void disconnect() {
+        }
+        
+        @Override
+        public boolean usingProxy() {
+            return false;
+        }
+    }
+    
+    @Test
+    public void roundTripKeepsEveryValue() throws Exception {
+        StringBuilder longText = new StringBuilder();
+        for (int i = 0; i < 300; i++) {
+            longText.append((char) ('a' + i % 26));
+        }
+        JSONObject value = new JSONObject()
+            .put("queue_id", 42)
+            .put("phone", "+4915112345678")
+            .put("message", "Grüße – ваш код 1234 ✓")
+            .put("shipment_id", 1700000000000L)
+            .put("segments", 0)
+            .put("priority", -5)
+            .put("not_in_dictionary", Integer.MIN_VALUE - 1L)
+            .put("delivery_time_seconds", 2.5)
+            .put("sms_sent", true)
+            .put("lease_id", false)
+            .put("error_code", JSONObject.NULL)
+            .put("original_message", "")
+            .put("reply_type", longText.toString())
+            .put("params", new JSONObject().put("pin", "0042").put("nested", new JSONArray().put(1).put("x")))
+            .put("statuses", new JSONArray()
+                .put(new JSONObject().put("status", "sent"))
+                .put(new JSONArray())
+                .put(255)
+                .put(65536)
+                .put(4294967296L));
+        
+        Object decoded = WireFormat.decode(WireFormat.encode(value));
+        assertEquals(value.toString(), decoded.toString());
+        
+        JSONArray array = new JSONArray().put(Long.MAX_VALUE).put(Long.MIN_VALUE).put(Integer.MAX_VALUE);
+        assertEquals(array.toString(), WireFormat.decode(WireFormat.encode(array)).toString());
+    }
+    
+    @Test
+    public void dictionaryKeysCostOneByte() throws Exception {
+        // map(1), key 0 (queue_id), value 1
+        byte[] bytes = WireFormat.encode(new JSONObject().put("queue_id", 1));
+        assertEquals("a10001", hex(bytes));
+    }
+    
+    @Test
+    public void decodesStandardEncodings() throws Exception {
+        // Vectors from RFC 8949 appendix A
+        assertEquals(1000, WireFormat.decode(bytes("1903e8")));
+        assertEquals(-1000, WireFormat.decode(bytes("3903e7")));
+        assertEquals(1000000000000L, WireFormat.decode(bytes("1b000000e8d4a51000")));
+        assertEquals(Long.MAX_VALUE, WireFormat.decode(bytes("1b7fffffffffffffff")));
+        assertEquals(Long.MIN_VALUE, WireFormat.decode(bytes("3b7fffffffffffffff")));
+        assertEquals(1.0, WireFormat.decode(bytes("f93c00")));
+        assertEquals(1.5, WireFormat.decode(bytes("f93e00")));
+        assertEquals(100000.0, WireFormat.decode(bytes("fa47c35000")));
+        assertEquals(-4.1, WireFormat.decode(bytes("fbc010666666666666")));
+        assertEquals(Boolean.TRUE, WireFormat.decode(bytes("f5")));
+        assertEquals(JSONObject.NULL, WireFormat.decode(bytes("f6")));
+        assertEquals("streaming", WireFormat.decode(bytes("7f657374726561646d696e67ff")));
+        assertEquals("[1,[2,3],[4,5]]", WireFormat.decode(bytes("9f018202039f0405ffff")).toString());
+        assertEquals("{\"a\":1,\"b\":[2,3]}", WireFormat.decode(bytes("bf61610161629f0203ffff")).toString());
+        // Tag 1 (epoch time) is ignored
+        assertEquals(1363896240, WireFormat.decode(bytes("c11a514b67b0")));
+    }
+    
+    @Test
+    public void rejectsMalformedInput() {
+        assertRejected("1bffffffffffffffff");   // unsigned 2^64 - 1
+        assertRejected("1b8000000000000000");   // unsigned 2^63
+        assertRejected("3b8000000000000000");   // negative -2^63 - 1
+        assertRejected("5b8000000000000000");   // byte string of length 2^63
+        assertRejected("9b8000000000000000");   // array of length 2^63
+        assertRejected("7f7b8000000000000000ff");   // string chunk of length 2^63
+        assertRejected("1f");                   // indefinite integer
+        assertRejected("1903");                 // truncated argument
+        assertRejected("6561");                 // truncated string
+        assertRejected("ff");                   // lone break
+        assertRejected("f8");                   // unsupported simple value
+    }
+    
+    @Test
+    public void negotiatesEachEndpointSeparately() throws Exception {
+        JSONObject body = new JSONObject().put("queue_id", 1);
+        
+        // Nothing negotiated yet: JSON
+        assertEquals(WireFormat.CONTENT_TYPE_JSON, send("http://prober.test/api/sms/probe.php", body));
+        
+        // The prober answers in CBOR; only the prober switches
+        WireFormat.noteResponse(new FakeConnection("http://prober.test/api/sms/probe.php?x=1")
+            .respond(200, "application/cbor; dict=1"));
+        assertEquals(WireFormat.CONTENT_TYPE_CBOR, send("http://prober.test/api/sms/probe.php", body));
+        assertEquals(WireFormat.CONTENT_TYPE_CBOR, send("http://prober.test/api/sms/probe.php?id=7", body));
+        assertEquals(WireFormat.CONTENT_TYPE_JSON, send("http://prober.test/api/sms/template.php", body));
+        assertEquals(WireFormat.CONTENT_TYPE_JSON, send("http://other.test/api/sms/probe.php", body));
+        assertEquals(WireFormat.CONTENT_TYPE_JSON, send("http://prober.test:8080/api/sms/probe.php", body));
+        
+        // A JSON answer elsewhere leaves the prober alone
+        WireFormat.noteResponse(new FakeConnection("http://prober.test/api/sms/template.php")
+            .respond(200, "application/json"));
+        assertEquals(WireFormat.CONTENT_TYPE_CBOR, send("http://prober.test/api/sms/probe.php", body));
+        
+        // 415 from the prober switches it back
+        WireFormat.noteResponse(new FakeConnection("http://prober.test/api/sms/probe.php")
+            .respond(415, "text/plain"));
+        assertEquals(WireFormat.CONTENT_TYPE_JSON, send("http://prober.test/api/sms/probe.php", body));
+    }
+    
+    @Test
+    public void statusBatchIsMuchSmallerInCbor() throws Exception {
+        JSONObject envelope = statusBatch();
+        String json = envelope.toString();
+        byte[] cbor = WireFormat.encode(envelope);
+        assertEquals(json, WireFormat.decode(cbor).toString());
+        assertTrue("CBOR batch should be well under its JSON size", cbor.length * 10 < json.getBytes("UTF-8").length * 7);
+    }
+    
+    @Test
+    public void responsesDecodeStraightToObjects() throws Exception {
+        JSONObject envelope = statusBatch();
+        
+        FakeConnection cbor = new FakeConnection("http://prober.test/api/sms/sync.php").respond(200, WireFormat.CONTENT_TYPE_CBOR);
+        JSONObject decoded = WireFormat.readObject(cbor, new ByteArrayInputStream(WireFormat.encode(envelope)));
+        assertEquals(envelope.toString(), decoded.toString());
+        assertEquals(BATCH_STATUSES, decoded.getJSONArray("statuses").length());
+        
+        FakeConnection json = new FakeConnection("http://prober.test/api/sms/sync.php").respond(200, "application/json");
+        decoded = WireFormat.readObject(json, new ByteArrayInputStream(envelope.toString().getBytes("UTF-8")));
+        assertEquals(envelope.toString(), decoded.toString());
+        
+        // Empty bodies read as empty objects in either encoding
+        assertEquals(0, WireFormat.readObject(json, new ByteArrayInputStream(new byte[0])).length());
+        assertEquals(0, WireFormat.readObject(cbor, new ByteArrayInputStream(new byte[0])).length());
+        
+        try {
+            WireFormat.readObject(cbor, new ByteArrayInputStream(WireFormat.encode(new JSONArray().put(1))));
+            fail("CBOR array read as an object");
+        } catch (Exception expected) {
+            // Only a map is a valid object response
+        }
+    }
+    
+    private static JSONObject statusBatch() throws Exception {
+        JSONArray statuses = new JSONArray();
+        for (int i = 0; i < BATCH_STATUSES; i++) {
+            statuses.put(new JSONObject()
+                .put("queue_id", 100000 + i)
+                .put("phone", "+49151" + (1000000 + i))
+                .put("status", i % 5 == 0 ? "failed" : "delivered")
+                .put("shipment_id", 5000 + i)
+                .put("error_code", i % 5 == 0 ? "RESULT_ERROR_GENERIC_FAILURE" : "")
+                .put("sent_timestamp", 1700000000000L + i * 1000)
+                .put("delivered_timestamp", 1700000004000L + i * 1000)
+                .put("delivery_time_seconds", 4)
+                .put("segments", 1 + i % 3)
+                .put("encoding", "gsm7"));
+        }
+        return new JSONObject()
+            .put("device_id", "a1b2c3d4e5f60718")
+            .put("statuses", statuses)
+            .put("fetch", new JSONObject().put("max_tasks", 8));
+    }
+    
+    private static String send(String url, JSONObject body) throws IOException {
+        FakeConnection connection = new FakeConnection(url);
+        WireFormat.writeBody(connection, body);
+        return connection.getRequestProperty("Content-Type");
+    }
+    
+    private static void assertRejected(String hex) {
+        try {
+            Object value = WireFormat.decode(bytes(hex));
+            fail(hex + " decoded to " + value);
+        } catch (IOException expected) {
+            // Malformed input must fail loudly rather than decode to a wrong value
+        }
+    }
+    
+    private static byte[] bytes(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+        }
+        return bytes;
+    }
+    
+    private static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b & 0xFF));
+        }
+        return sb.toString();
+    }
+}
\ No newline at end of file